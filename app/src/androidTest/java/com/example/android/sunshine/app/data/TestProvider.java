@@ -16,8 +16,11 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
@@ -30,6 +33,8 @@ import android.util.Log;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -512,4 +517,104 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // Checks that a batch is applied in one transaction: a location and its weather, linked by a
+    // back reference, go in together, and a batch that fails leaves nothing behind.
+    public void testApplyBatch() throws Exception {
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(0);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(locationValues).build());
+        for (ContentValues values : weatherValues) {
+            values.remove(WeatherEntry.COLUMN_LOC_KEY);
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT + 1, results.length);
+        long locationRowId = ContentUris.parseId(results[0].uri);
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(locationRowId)}, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        // a batch whose last operation fails must not leave its first one behind
+        operations.clear();
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI).build());
+        operations.add(ContentProviderOperation.newAssertQuery(LocationEntry.CONTENT_URI)
+                .withExpectedCount(2).build());
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            fail("The assertion should have failed the batch");
+        } catch (OperationApplicationException e) {
+            // expected
+        }
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+    }
+
+    // The batch should notify each changed Uri once, after it commits, and nothing if it fails.
+    // Outside a batch, every write should still notify right away.
+    public void testApplyBatchNotifications() throws Exception {
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(0);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues()).build());
+        for (ContentValues values : weatherValues) {
+            values.remove(WeatherEntry.COLUMN_LOC_KEY);
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        operations.add(ContentProviderOperation.newUpdate(WeatherEntry.CONTENT_URI)
+                .withValue(WeatherEntry.COLUMN_SHORT_DESC, "Snow")
+                .build());
+
+        TestUtilities.CountingContentObserver observer =
+                TestUtilities.CountingContentObserver.getCountingContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.BASE_CONTENT_URI, true, observer);
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            observer.sync(mContext);
+            assertEquals(1, observer.getCount(LocationEntry.CONTENT_URI));
+            assertEquals(1, observer.getCount(WeatherEntry.CONTENT_URI));
+
+            observer.reset();
+            operations.clear();
+            operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI).build());
+            operations.add(ContentProviderOperation.newAssertQuery(LocationEntry.CONTENT_URI)
+                    .withExpectedCount(2).build());
+            try {
+                mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+                fail("The assertion should have failed the batch");
+            } catch (OperationApplicationException e) {
+                // expected
+            }
+            observer.sync(mContext);
+            assertEquals("A rolled back batch notified", 0, observer.getCount(WeatherEntry.CONTENT_URI));
+
+            // neither batch may leave its set of changes behind on this thread
+            observer.reset();
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+            observer.sync(mContext);
+            assertEquals(1, observer.getCount(WeatherEntry.CONTENT_URI));
+        } finally {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.quit();
+        }
+    }
 }
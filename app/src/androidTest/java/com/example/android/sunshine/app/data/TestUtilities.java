@@ -27,6 +27,7 @@ import android.test.AndroidTestCase;
 
 import com.example.android.sunshine.app.utils.PollingCheck;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -163,4 +164,68 @@ public class TestUtilities extends AndroidTestCase {
     static TestContentObserver getTestContentObserver() {
         return TestContentObserver.getTestContentObserver();
     }
+
+    /*
+        Counts the notifications for each Uri under the one it's registered for. Notifications
+        are delivered on its own thread, so tests send a sentinel notification last and wait for
+        it, after which every notification sent before it has been counted.
+     */
+    static class CountingContentObserver extends ContentObserver {
+        static final Uri SENTINEL_URI =
+                WeatherContract.BASE_CONTENT_URI.buildUpon().appendPath("sentinel").build();
+
+        final HandlerThread mHT;
+        final Map<Uri, Integer> mCounts = new HashMap<>();
+
+        static CountingContentObserver getCountingContentObserver() {
+            HandlerThread ht = new HandlerThread("CountingContentObserverThread");
+            ht.start();
+            return new CountingContentObserver(ht);
+        }
+
+        private CountingContentObserver(HandlerThread ht) {
+            super(new Handler(ht.getLooper()));
+            mHT = ht;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public synchronized void onChange(boolean selfChange, Uri uri) {
+            Integer count = mCounts.get(uri);
+            mCounts.put(uri, count == null ? 1 : count + 1);
+        }
+
+        synchronized int getCount(Uri uri) {
+            Integer count = mCounts.get(uri);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * Waits until every notification sent before this call has been counted.
+         */
+        void sync(Context context) {
+            synchronized (this) {
+                mCounts.remove(SENTINEL_URI);
+            }
+            context.getContentResolver().notifyChange(SENTINEL_URI, null);
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return getCount(SENTINEL_URI) > 0;
+                }
+            }.run();
+        }
+
+        synchronized void reset() {
+            mCounts.clear();
+        }
+
+        void quit() {
+            mHT.quit();
+        }
+    }
 }
@@ -0,0 +1,179 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentProvider;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks the operations ForecastDiff adds for a location's new days against its stored ones,
+    by applying them to a provider that only records what it's asked to write.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long LOCATION_ID = 7;
+    private static final long FIRST_DATE = 1419033600000L;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000;
+    private static final int DAYS = 3;
+
+    private static class RecordingProvider extends MockContentProvider {
+        final List<ContentValues> inserts = new ArrayList<>();
+        final List<ContentValues> updates = new ArrayList<>();
+        final List<String> updateSelections = new ArrayList<>();
+        final List<String[]> updateArgs = new ArrayList<>();
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            assertEquals(WeatherEntry.CONTENT_URI, uri);
+            inserts.add(values);
+            return WeatherEntry.buildWeatherUri(inserts.size());
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            assertEquals(WeatherEntry.CONTENT_URI, uri);
+            updates.add(values);
+            updateSelections.add(selection);
+            updateArgs.add(selectionArgs);
+            return 1;
+        }
+    }
+
+    private static ContentValues createDay(int day, double high, String desc) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_DATE, FIRST_DATE + day * DAY_MS);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, 5.5);
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, desc);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        return values;
+    }
+
+    private static List<ContentValues> createDays() {
+        List<ContentValues> rows = new ArrayList<>();
+        for (int day = 0; day < DAYS; day++) {
+            rows.add(createDay(day, 20 + day, "Clear"));
+        }
+        return rows;
+    }
+
+    /**
+     * @return a cursor over {@code rows} as if they were stored, with IDs from 100 on
+     */
+    private static MatrixCursor createStored(List<ContentValues> rows) {
+        String[] projection = ForecastDiff.getProjection(rows.get(0));
+        MatrixCursor cursor = new MatrixCursor(projection);
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = new Object[projection.length];
+            for (int column = 0; column < projection.length; column++) {
+                row[column] = WeatherEntry._ID.equals(projection[column])
+                        ? 100 + i : rows.get(i).get(projection[column]);
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private static RecordingProvider apply(List<ContentProviderOperation> operations,
+                                           ContentProviderResult[] backRefs) throws Exception {
+        RecordingProvider provider = new RecordingProvider();
+        for (ContentProviderOperation operation : operations) {
+            operation.apply(provider, backRefs, backRefs.length);
+        }
+        return provider;
+    }
+
+    public void testUnchangedDaysAreNotWritten() throws Exception {
+        List<ContentProviderOperation> operations = new ArrayList<>();
+        ForecastDiff diff = ForecastDiff.addOperations(operations, createDays(),
+                createStored(createDays()), LOCATION_ID, -1);
+
+        assertEquals(0, operations.size());
+        assertEquals(DAYS, diff.unchanged);
+        assertEquals(0, diff.updated);
+        assertEquals(0, diff.inserted);
+        assertFalse(diff.hasChanges());
+    }
+
+    public void testChangedDayUpdatesOnlyItsChangedColumns() throws Exception {
+        List<ContentValues> rows = createDays();
+        rows.set(1, createDay(1, 24.5, "Rain"));
+
+        List<ContentProviderOperation> operations = new ArrayList<>();
+        ForecastDiff diff = ForecastDiff.addOperations(operations, rows,
+                createStored(createDays()), LOCATION_ID, -1);
+
+        assertEquals(1, operations.size());
+        assertEquals(DAYS - 1, diff.unchanged);
+        assertEquals(1, diff.updated);
+        assertTrue(diff.hasChanges());
+
+        RecordingProvider provider = apply(operations, new ContentProviderResult[0]);
+        assertEquals(0, provider.inserts.size());
+        ContentValues update = provider.updates.get(0);
+        assertEquals(2, update.size());
+        assertEquals(24.5, update.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP));
+        assertEquals("Rain", update.getAsString(WeatherEntry.COLUMN_SHORT_DESC));
+        assertEquals(WeatherEntry._ID + " = ?", provider.updateSelections.get(0));
+        assertEquals("101", provider.updateArgs.get(0)[0]);
+    }
+
+    public void testNewDaysAreInserted() throws Exception {
+        List<ContentValues> rows = createDays();
+        rows.add(createDay(DAYS, 30, "Clouds"));
+
+        List<ContentProviderOperation> operations = new ArrayList<>();
+        ForecastDiff diff = ForecastDiff.addOperations(operations, rows,
+                createStored(createDays()), LOCATION_ID, -1);
+
+        assertEquals(DAYS, diff.unchanged);
+        assertEquals(1, diff.inserted);
+        assertTrue(diff.hasChanges());
+
+        RecordingProvider provider = apply(operations, new ContentProviderResult[0]);
+        assertEquals(1, provider.inserts.size());
+        ContentValues insert = provider.inserts.get(0);
+        assertEquals(LOCATION_ID, (long) insert.getAsLong(WeatherEntry.COLUMN_LOC_KEY));
+        assertEquals(FIRST_DATE + DAYS * DAY_MS, (long) insert.getAsLong(WeatherEntry.COLUMN_DATE));
+        assertEquals("Clouds", insert.getAsString(WeatherEntry.COLUMN_SHORT_DESC));
+    }
+
+    public void testNewLocationInsertsEveryDayWithBackReference() throws Exception {
+        List<ContentProviderOperation> operations = new ArrayList<>();
+        // stands in for the location's insert, which comes first in the batch
+        operations.add(ContentProviderOperation.newInsert(WeatherContract.LocationEntry.CONTENT_URI).build());
+        ForecastDiff diff = ForecastDiff.addOperations(operations, createDays(), null, -1, 0);
+
+        assertEquals(DAYS + 1, operations.size());
+        assertEquals(DAYS, diff.inserted);
+        assertEquals(0, diff.unchanged);
+        assertTrue(diff.hasChanges());
+
+        ContentProviderResult[] backRefs = {new ContentProviderResult(
+                WeatherContract.LocationEntry.buildLocationUri(LOCATION_ID))};
+        RecordingProvider provider = apply(operations.subList(1, operations.size()), backRefs);
+        assertEquals(DAYS, provider.inserts.size());
+        for (ContentValues insert : provider.inserts) {
+            assertEquals(LOCATION_ID, (long) insert.getAsLong(WeatherEntry.COLUMN_LOC_KEY));
+        }
+    }
+
+    public void testDeletedRowsAreChanges() {
+        ForecastDiff diff = new ForecastDiff();
+        assertFalse(diff.hasChanges());
+
+        ForecastDiff deleted = new ForecastDiff();
+        deleted.deleted = 2;
+        diff.add(deleted);
+        assertTrue(diff.hasChanges());
+    }
+}
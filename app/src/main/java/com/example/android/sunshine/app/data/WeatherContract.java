@@ -19,7 +19,10 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+
+import com.example.android.sunshine.core.WeatherDates;
+
+import java.util.TimeZone;
 
 /**
  * Defines table and column names for the weather database.
@@ -48,10 +51,7 @@ public class WeatherContract {
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
         // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        return WeatherDates.normalizeDate(startDate, TimeZone.getDefault());
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -0,0 +1,162 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What storing forecasts changed in the weather table, row by row.
+ * <p/>
+ * The table replaces a row on conflict, so inserting a forecast that's already stored deletes
+ * and re-inserts every day and notifies every loader. Instead, {@link #addOperations} reads the
+ * location's stored days once and compares them field by field with the new ones: a day that's
+ * new is inserted, a day that differs is updated in place with only its changed fields, and a
+ * day that's the same isn't touched, so a batch of unchanged days notifies no one.
+ */
+class ForecastDiff {
+
+    int unchanged;
+    int updated;
+    int inserted;
+    int deleted;
+
+    /**
+     * @return whether any row was written
+     */
+    boolean hasChanges() {
+        return updated > 0 || inserted > 0 || deleted > 0;
+    }
+
+    void add(ForecastDiff diff) {
+        unchanged += diff.unchanged;
+        updated += diff.updated;
+        inserted += diff.inserted;
+        deleted += diff.deleted;
+    }
+
+    @Override
+    public String toString() {
+        return unchanged + " unchanged, " + updated + " updated, " + inserted + " inserted, "
+                + deleted + " deleted";
+    }
+
+    /**
+     * Adds the operations that bring the location's stored days in line with {@code rows},
+     * counting them in a new diff.
+     *
+     * @param existing   the location's stored days from the first day of {@code rows} on, with
+     *                   {@link WeatherContract.WeatherEntry#_ID}, the date and every column of
+     *                   {@code rows}; null if the location is new
+     * @param locationId the location's ID, or -1 if it's inserted by the operation at
+     *                   {@code locationOperation}
+     */
+    static ForecastDiff addOperations(List<ContentProviderOperation> operations,
+                                      List<ContentValues> rows, Cursor existing,
+                                      long locationId, int locationOperation) {
+        ForecastDiff diff = new ForecastDiff();
+        Map<Long, Integer> positions = new HashMap<>();
+        int idColumn = -1;
+        if (existing != null) {
+            idColumn = existing.getColumnIndexOrThrow(WeatherContract.WeatherEntry._ID);
+            int dateColumn = existing.getColumnIndexOrThrow(WeatherContract.WeatherEntry.COLUMN_DATE);
+            while (existing.moveToNext()) {
+                positions.put(existing.getLong(dateColumn), existing.getPosition());
+            }
+        }
+
+        for (ContentValues weatherValues : rows) {
+            Integer position = positions.get(weatherValues.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+            if (position == null) {
+                ContentProviderOperation.Builder insert =
+                        ContentProviderOperation.newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                                .withValues(weatherValues);
+                if (locationId == -1) {
+                    // the ID of the location inserted in the same batch
+                    insert.withValueBackReference(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationOperation);
+                } else {
+                    insert.withValue(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                }
+                operations.add(insert.build());
+                diff.inserted++;
+                continue;
+            }
+
+            existing.moveToPosition(position);
+            ContentValues changed = getChangedValues(weatherValues, existing);
+            if (changed.size() == 0) {
+                diff.unchanged++;
+            } else {
+                operations.add(ContentProviderOperation.newUpdate(WeatherContract.WeatherEntry.CONTENT_URI)
+                        .withSelection(WeatherContract.WeatherEntry._ID + " = ?",
+                                new String[]{Long.toString(existing.getLong(idColumn))})
+                        .withValues(changed)
+                        .build());
+                diff.updated++;
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * @return the columns of the row that differ from the cursor's current row
+     */
+    private static ContentValues getChangedValues(ContentValues row, Cursor existing) {
+        ContentValues changed = new ContentValues();
+        for (Map.Entry<String, Object> entry : row.valueSet()) {
+            Object value = entry.getValue();
+            int column = existing.getColumnIndexOrThrow(entry.getKey());
+            boolean same;
+            if (value == null) {
+                same = existing.isNull(column);
+            } else if (value instanceof Number) {
+                // the table stores every number as a long or a double, which both compare
+                // exactly as doubles with what was stored
+                same = !existing.isNull(column)
+                        && ((Number) value).doubleValue() == existing.getDouble(column);
+            } else {
+                same = value.toString().equals(existing.getString(column));
+            }
+            if (!same) {
+                putValue(changed, entry.getKey(), value);
+            }
+        }
+        return changed;
+    }
+
+    private static void putValue(ContentValues values, String key, Object value) {
+        if (value == null) {
+            values.putNull(key);
+        } else if (value instanceof Integer) {
+            values.put(key, (Integer) value);
+        } else if (value instanceof Long) {
+            values.put(key, (Long) value);
+        } else if (value instanceof Double) {
+            values.put(key, (Double) value);
+        } else {
+            values.put(key, value.toString());
+        }
+    }
+
+    /**
+     * @return the columns to read the stored days with for {@code row}'s columns
+     */
+    static String[] getProjection(ContentValues row) {
+        List<String> columns = new ArrayList<>();
+        columns.add(WeatherContract.WeatherEntry._ID);
+        // keySet() needs API 11
+        for (Map.Entry<String, Object> entry : row.valueSet()) {
+            columns.add(entry.getKey());
+        }
+        if (!columns.contains(WeatherContract.WeatherEntry.COLUMN_DATE)) {
+            columns.add(WeatherContract.WeatherEntry.COLUMN_DATE);
+        }
+        return columns.toArray(new String[columns.size()]);
+    }
+}
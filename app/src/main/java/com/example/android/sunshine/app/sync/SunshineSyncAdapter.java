@@ -7,11 +7,13 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -22,11 +24,11 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.Time;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
@@ -35,33 +37,34 @@ import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallbacks;
-import com.google.android.gms.common.api.Status;
-import com.google.android.gms.wearable.Asset;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
+import com.example.android.sunshine.core.FanOut;
+import com.example.android.sunshine.core.ForecastFetcher;
+import com.example.android.sunshine.core.ForecastSyncEngine;
+import com.example.android.sunshine.core.OwmForecastParser;
+import com.example.android.sunshine.core.WeatherDates;
+
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
     private final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
 
@@ -69,7 +72,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
     // Interval at which to sync with the weather, in seconds.
     // 60 seconds (1 minute) * 180 = 3 hours
-    private static final int SYNC_INTERVAL = 60 * 180;
+    static final int SYNC_INTERVAL = 60 * 180;
     private static final int SYNC_FLEXTIME = SYNC_INTERVAL / 3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
@@ -88,7 +91,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     private static final int INDEX_MIN_TEMP = 2;
     private static final int INDEX_SHORT_DESC = 3;
 
-
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID, LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {
@@ -100,345 +102,503 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
-    private final GoogleApiClient mGoogleApiClient;
+    // How many locations are synced at once, and how many of those can be connected to
+    // OpenWeatherMap at a time, which stays within the connections HttpURLConnection keeps alive
+    private static final int SYNC_THREADS = 6;
+    private static final int CONNECTIONS_PER_HOST = 4;
+
+    // How many of what's updated after a sync run at once, and how long each may take. The
+    // notification downloads its large icon, which falls back to the bundled art if interrupted.
+    private static final int FAN_OUT_THREADS = 3;
+    private static final long FAN_OUT_TIMEOUT_MS = 2000;
+    private static final long NOTIFICATION_TIMEOUT_MS = 15000;
+
+    // Set while a notification is being built, by any instance
+    private static final AtomicBoolean sNotifying = new AtomicBoolean();
+
+    private final ForecastFetcher mFetcher;
+    private final ForecastSyncEngine mSyncEngine;
+    private final FanOut<SyncUpdate> mFanOut;
 
     public SunshineSyncAdapter(Context context) {
         super(context, true);
-
-        Log.d(LOG_TAG, "Connecting to Google Api");
-        mGoogleApiClient = new GoogleApiClient.Builder(context)
-                .addApi(Wearable.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .build();
-        mGoogleApiClient.connect();
+        mFetcher = new ForecastFetcher(new File(context.getCacheDir(), "forecast"));
+        mSyncEngine = new ForecastSyncEngine(mFetcher, SYNC_THREADS, CONNECTIONS_PER_HOST);
+        mFanOut = createFanOut();
     }
 
-    @Override
-    public void onConnected(Bundle bundle) {
-        Log.d(LOG_TAG, "Google Api Connected!");
+    /**
+     * Today's weather at the preferred location, as the notification shows it. The widgets,
+     * Muzei and the watch read what they show themselves.
+     */
+    private static class TodayWeather {
+        int weatherId;
+        double high;
+        double low;
+        String desc;
     }
 
-    private void notifyWearables() {
-        if (mGoogleApiClient == null || !mGoogleApiClient.isConnected()) {
-            Log.e(LOG_TAG, "Not connected :(");
-            return;
+    /**
+     * What's handed to everything updated after a sync, read once on the fan-out's thread.
+     */
+    private static class SyncUpdate {
+        // whether any of the preferred location's stored rows changed
+        final boolean changed;
+        // null if today's weather isn't stored
+        final TodayWeather today;
+
+        SyncUpdate(boolean changed, TodayWeather today) {
+            this.changed = changed;
+            this.today = today;
         }
+    }
 
-        //Get weather information
-        String locationQuery = Utility.getPreferredLocation(getContext());
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-        Cursor cursor = getContext().getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-        if (cursor == null || !cursor.moveToFirst())
-            return;
-
-        //Send data to wearable
-        Log.d(LOG_TAG, "Sending data to wearables...");
-        int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-        String highTemp = Utility.formatTemperature(getContext(), cursor.getDouble(INDEX_MAX_TEMP));
-        String lowTemp = Utility.formatTemperature(getContext(), cursor.getDouble(INDEX_MIN_TEMP));
-        int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
-
-        Bitmap iconBitmap = BitmapFactory.decodeResource(getContext().getResources(), iconId);
-
-        PutDataMapRequest mapRequest = PutDataMapRequest.create("/weather-data");
-        mapRequest.getDataMap().putString("high-temp", highTemp);
-        mapRequest.getDataMap().putString("low-temp", lowTemp);
-        mapRequest.getDataMap().putAsset("icon", createAssetFromBitmap(iconBitmap));
-        mapRequest.getDataMap().putLong("time", System.currentTimeMillis());
-
-        PutDataRequest request = mapRequest.asPutDataRequest();
-        Wearable.DataApi.putDataItem(mGoogleApiClient, request).setResultCallback(new ResultCallbacks<DataApi.DataItemResult>() {
-            @Override
-            public void onSuccess(DataApi.DataItemResult dataItemResult) {
-                Log.d(LOG_TAG, "Success!");
-            }
+    /**
+     * Collects one location's forecast as the rows to insert for it.
+     */
+    private static class ForecastRows implements OwmForecastParser.Handler {
+        private final int mJulianStartDay;
+        private final TimeZone mTimeZone;
 
-            @Override
-            public void onFailure(Status status) {
-                Log.d(LOG_TAG, "Failure!");
-            }
-        });
-    }
+        String cityName;
+        double cityLatitude;
+        double cityLongitude;
+        final List<ContentValues> rows = new ArrayList<>();
 
-    @Override
-    public void onConnectionSuspended(int i) {
+        /**
+         * @param fetchedMs when the forecast was fetched, which its first day is the day of
+         */
+        ForecastRows(long fetchedMs, TimeZone timeZone) {
+            // OWM returns daily forecasts based upon the local time of the city that is being
+            // asked for, which means that we need to know the GMT offset to translate this data
+            // properly.
 
-    }
+            // Since this data is also sent in-order and the first day is always the
+            // current day, we're going to take advantage of that to get a nice
+            // normalized UTC date for all of our weather.
 
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
+            // we start at the day returned by local time. Otherwise this is a mess.
+            mJulianStartDay = WeatherDates.getJulianDay(fetchedMs, timeZone);
+            mTimeZone = timeZone;
+        }
 
-    }
+        @Override
+        public void onCity(String name, double latitude, double longitude) {
+            cityName = name;
+            cityLatitude = latitude;
+            cityLongitude = longitude;
+        }
 
-    private static Asset createAssetFromBitmap(Bitmap bitmap) {
-        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
-        return Asset.createFromBytes(byteStream.toByteArray());
+        @Override
+        public void onDay(int index, OwmForecastParser.Day day) {
+            ContentValues weatherValues = new ContentValues();
+
+            // the start of the day, the same as WeatherContract.normalizeDate gives
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    WeatherDates.getStartOfJulianDay(mJulianStartDay + index, mTimeZone));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, day.humidity);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, day.pressure);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, day.windSpeed);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, day.windDirection);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, day.high);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, day.low);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, day.description);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, day.weatherId);
+
+            rows.add(weatherValues);
+        }
     }
 
-
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
+        long startNanos = System.nanoTime();
+        List<String> locations = Utility.getSyncLocations(getContext());
+        String preferredLocation = locations.get(0);
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        Map<String, URL> urls = new LinkedHashMap<>();
+        try {
+            for (String location : locations) {
+                urls.put(location, buildForecastUrl(location));
+            }
+        } catch (MalformedURLException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            return;
+        }
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        final TimeZone timeZone = TimeZone.getDefault();
+        final long syncMs = System.currentTimeMillis();
+        List<ForecastSyncEngine.Result<ForecastRows>> results;
+        try {
+            // Fetch and parse every location at once, each streamed rather than read into a
+            // String first
+            results = mSyncEngine.syncAll(urls, new ForecastSyncEngine.HandlerFactory<ForecastRows>() {
+                @Override
+                public ForecastRows create(String location) {
+                    return new ForecastRows(syncMs, timeZone);
+                }
+            });
+        } catch (InterruptedException e) {
+            // the sync was cancelled
+            Thread.currentThread().interrupt();
+            return;
+        }
+        ForecastDiff diff;
+        try {
+            diff = storeForecasts(results, preferredLocation, timeZone);
+        } finally {
+            ForecastSyncEngine.closeAll(results);
+        }
+        Log.d(LOG_TAG, "Synced " + locations.size() + " locations in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms"
+                + (diff != null ? ": " + diff : ""));
+    }
 
+    private static URL buildForecastUrl(String locationQuery) throws MalformedURLException {
         String format = "json";
         String units = "metric";
         int numDays = 14;
 
-        try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, "ad05b9e0c2293505a5414cb7ada8a3b8")
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
+        // Construct the URL for the OpenWeatherMap query
+        // Possible parameters are avaiable at OWM's forecast API page, at
+        // http://openweathermap.org/API#forecast
+        final String FORECAST_BASE_URL =
+                "http://api.openweathermap.org/data/2.5/forecast/daily?";
+        final String QUERY_PARAM = "q";
+        final String FORMAT_PARAM = "mode";
+        final String UNITS_PARAM = "units";
+        final String DAYS_PARAM = "cnt";
+        final String APPID_PARAM = "APPID";
+
+        Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+                .appendQueryParameter(QUERY_PARAM, locationQuery)
+                .appendQueryParameter(FORMAT_PARAM, format)
+                .appendQueryParameter(UNITS_PARAM, units)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(APPID_PARAM, "ad05b9e0c2293505a5414cb7ada8a3b8")
+                .build();
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
-            }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
-        }
-        return;
+        return new URL(builtUri.toString());
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     * <p/>
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Writes what changed in the forecasts in one transaction, then commits their fetches and
+     * hands the preferred location's weather to everything that shows it.
+     *
+     * @return what changed in the weather table, or null if nothing could be stored
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting) {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
+    private ForecastDiff storeForecasts(List<ForecastSyncEngine.Result<ForecastRows>> results,
+                                        String preferredLocation, TimeZone timeZone) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        List<ForecastSyncEngine.Result<ForecastRows>> fetched = new ArrayList<>();
+        @LocationStatus int preferredStatus = LOCATION_STATUS_UNKNOWN;
+        boolean preferredChanged = false;
+        ForecastDiff total = new ForecastDiff();
+
+        for (ForecastSyncEngine.Result<ForecastRows> result : results) {
+            @LocationStatus int status = getLocationStatus(result);
+            Log.d(LOG_TAG, String.format(Locale.US, "%s: %s, fetch %dms, parse %dms, %d bytes",
+                    result.location, result.getError() != null ? result.getError() : result.getCode(),
+                    TimeUnit.NANOSECONDS.toMillis(result.getFetchNanos()),
+                    TimeUnit.NANOSECONDS.toMillis(result.getParseNanos()),
+                    result.getTransferredBytes()));
+
+            ForecastRows forecast = result.handler;
+            if (result.isNotModified()) {
+                if (hasForecast(result.location)) {
+                    // Nothing changed, so there's nothing to store or tell anyone about
+                    status = LOCATION_STATUS_OK;
+                    forecast = null;
+                } else {
+                    // The database lost the forecast the server says we have; store our copy
+                    forecast = readCachedForecast(result.location, result.getFetchedMs(), timeZone);
+                    if (forecast == null) {
+                        mFetcher.invalidate(result.location);
+                        status = LOCATION_STATUS_SERVER_DOWN;
+                    }
+                }
+            } else if (status == LOCATION_STATUS_OK) {
+                // Only a forecast that made it into the database may be answered with a 304
+                fetched.add(result);
+            } else {
+                forecast = null;
+            }
 
-        // These are the names of the JSON objects that need to be extracted.
+            ForecastDiff diff = null;
+            if (forecast != null) {
+                diff = addForecastOperations(operations, result.location, forecast);
+                total.add(diff);
+            }
+            if (result.location.equals(preferredLocation)) {
+                preferredStatus = status;
+                preferredChanged = diff != null && diff.hasChanges();
+            }
+        }
 
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
+        // delete old data so we don't build up an endless history
+        int julianToday = WeatherDates.getJulianDay(System.currentTimeMillis(), timeZone);
+        int deleteOperation = operations.size();
+        operations.add(ContentProviderOperation.newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{Long.toString(WeatherDates.getStartOfJulianDay(julianToday - 1, timeZone))})
+                .build());
+        try {
+            // only notifies if a row was written
+            ContentProviderResult[] applied = getContext().getContentResolver()
+                    .applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            total.deleted = applied[deleteOperation].count;
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Error storing forecasts", e);
+            return null;
+        }
+        for (ForecastSyncEngine.Result<ForecastRows> result : fetched) {
+            try {
+                result.commit();
+            } catch (IOException e) {
+                // it'll just be fetched in full next time
+                Log.w(LOG_TAG, "Error caching " + result.location, e);
+            }
+        }
 
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
+        // Always dispatched, since the daily notification is due by time rather than by data;
+        // the rest only update if the preferred location's rows changed. Doesn't wait, so the
+        // sync is done once the forecasts are stored.
+        final boolean changed = preferredChanged;
+        mFanOut.dispatch(new Callable<SyncUpdate>() {
+            @Override
+            public SyncUpdate call() {
+                return new SyncUpdate(changed, readTodayWeather());
+            }
+        });
 
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
+        Log.d(LOG_TAG, "Sync Complete. " + total);
+        setLocationStatus(getContext(), preferredStatus);
+        return total;
+    }
 
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
+    @LocationStatus
+    private static int getLocationStatus(ForecastSyncEngine.Result<ForecastRows> result) {
+        if (result.getError() instanceof IllegalArgumentException) {
+            return LOCATION_STATUS_SERVER_INVALID;
+        } else if (result.getError() != null) {
+            // Includes a response that ends early, which is an EOFException
+            return LOCATION_STATUS_SERVER_DOWN;
+        }
+        switch (result.getCode()) {
+            case HttpURLConnection.HTTP_OK:
+                return result.handler.cityName != null ? LOCATION_STATUS_OK : LOCATION_STATUS_SERVER_INVALID;
+            case HttpURLConnection.HTTP_NOT_MODIFIED:
+                return LOCATION_STATUS_OK;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                return LOCATION_STATUS_INVALID;
+            default:
+                return LOCATION_STATUS_SERVER_DOWN;
+        }
+    }
 
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
+    /**
+     * @return the location's cached forecast, or null if there's none that parses
+     */
+    private ForecastRows readCachedForecast(String locationSetting, long fetchedMs, TimeZone timeZone) {
+        ForecastRows forecast = new ForecastRows(fetchedMs, timeZone);
+        try {
+            Reader cached = mFetcher.openCached(locationSetting);
+            if (cached != null && OwmForecastParser.parse(cached, forecast) == HttpURLConnection.HTTP_OK
+                    && forecast.cityName != null) {
+                return forecast;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(LOG_TAG, "Error reading cached " + locationSetting, e);
+        }
+        return null;
+    }
 
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+    /**
+     * @return whether the database has today's forecast for the location
+     */
+    private boolean hasForecast(String locationSetting) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationSetting,
+                        System.currentTimeMillis()),
+                new String[]{WeatherContract.WeatherEntry._ID}, null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
 
-        final String OWM_MESSAGE_CODE = "cod";
+    /**
+     * Adds the operations that write the days of the forecast that differ from the stored ones,
+     * and insert its location if it's new.
+     *
+     * @return what the operations change
+     */
+    private ForecastDiff addForecastOperations(ArrayList<ContentProviderOperation> operations,
+                                               String locationSetting, ForecastRows forecast) {
+        if (forecast.rows.isEmpty()) {
+            return new ForecastDiff();
+        }
+        long locationId = getLocationId(locationSetting);
+        int locationOperation = -1;
+        if (locationId == -1) {
+            locationOperation = operations.size();
+            operations.add(ContentProviderOperation.newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                    .withValue(WeatherContract.LocationEntry.COLUMN_CITY_NAME, forecast.cityName)
+                    .withValue(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting)
+                    .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LAT, forecast.cityLatitude)
+                    .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LONG, forecast.cityLongitude)
+                    .build());
+            return ForecastDiff.addOperations(operations, forecast.rows, null, -1, locationOperation);
+        }
 
+        // Read the location's stored days once, to compare the new ones with
+        ContentValues firstDay = forecast.rows.get(0);
+        Cursor existing = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                ForecastDiff.getProjection(firstDay),
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[]{Long.toString(locationId),
+                        Long.toString(firstDay.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE))},
+                null);
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if (forecastJson.has(OWM_MESSAGE_CODE)) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+            return ForecastDiff.addOperations(operations, forecast.rows, existing, locationId, -1);
+        } finally {
+            if (existing != null) {
+                existing.close();
             }
+        }
+    }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+    /**
+     * Creates the stage that updates everything showing the preferred location's weather after
+     * each sync: the widgets, Muzei and the watch if its rows changed, and the notification if
+     * it's due. Each runs on its own thread with its own timeout, so the notification's icon
+     * download holds up nothing else.
+     */
+    private FanOut<SyncUpdate> createFanOut() {
+        List<FanOut.Consumer<SyncUpdate>> consumers = Arrays.<FanOut.Consumer<SyncUpdate>>asList(
+                new FanOut.Consumer<SyncUpdate>() {
+                    @Override
+                    public String getName() {
+                        return "widgets";
+                    }
 
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
+                    @Override
+                    public long getTimeoutMs() {
+                        return FAN_OUT_TIMEOUT_MS;
+                    }
 
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+                    @Override
+                    public void accept(SyncUpdate update) {
+                        if (hasChanged(update)) {
+                            updateWidgets();
+                        }
+                    }
+                },
+                new FanOut.Consumer<SyncUpdate>() {
+                    @Override
+                    public String getName() {
+                        return "muzei";
+                    }
 
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
+                    @Override
+                    public long getTimeoutMs() {
+                        return FAN_OUT_TIMEOUT_MS;
+                    }
 
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<>(weatherArray.length());
+                    @Override
+                    public void accept(SyncUpdate update) {
+                        if (hasChanged(update)) {
+                            updateMuzei();
+                        }
+                    }
+                },
+                new FanOut.Consumer<SyncUpdate>() {
+                    @Override
+                    public String getName() {
+                        return "notification";
+                    }
 
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
+                    @Override
+                    public long getTimeoutMs() {
+                        return NOTIFICATION_TIMEOUT_MS;
+                    }
 
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
+                    @Override
+                    public void accept(SyncUpdate update) {
+                        notifyWeather(update != null ? update.today : null);
+                    }
+                },
+                new FanOut.Consumer<SyncUpdate>() {
+                    @Override
+                    public String getName() {
+                        return "wearables";
+                    }
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
+                    @Override
+                    public long getTimeoutMs() {
+                        return FAN_OUT_TIMEOUT_MS;
+                    }
 
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for (int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay + i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+                    @Override
+                    public void accept(SyncUpdate update) {
+                        if (hasChanged(update)) {
+                            WearablePublisher.getInstance(getContext()).requestPublish(false);
+                        }
+                    }
+                });
+        return new FanOut<>(consumers, FAN_OUT_THREADS, new FanOut.Listener() {
+            @Override
+            public void onFanOutComplete(String summary) {
+                Log.d(LOG_TAG, "Updated after sync: " + summary);
             }
+        });
+    }
 
-            int inserted = 0;
-            // add to database
-            if (cVVector.size() > 0) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-                notifyWearables();
-            }
+    /**
+     * @return whether the stored weather may have changed; it's assumed to have if the update
+     * couldn't be read
+     */
+    private static boolean hasChanged(SyncUpdate update) {
+        return update == null || update.changed;
+    }
+
+    void dump(PrintWriter out) {
+        out.print(mFanOut.toLogLines());
+        WearablePublisher.getInstance(getContext()).dump(out);
+    }
 
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+    /**
+     * @return today's weather at the preferred location, or null if it isn't stored
+     */
+    private TodayWeather readTodayWeather() {
+        Context context = getContext();
+        String locationQuery = Utility.getPreferredLocation(context);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        // we'll query our contentProvider, as always
+        Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            TodayWeather today = new TodayWeather();
+            today.weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            today.high = cursor.getDouble(INDEX_MAX_TEMP);
+            today.low = cursor.getDouble(INDEX_MIN_TEMP);
+            today.desc = cursor.getString(INDEX_SHORT_DESC);
+            return today;
+        } finally {
+            cursor.close();
         }
     }
 
@@ -460,7 +620,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         }
     }
 
-    private void notifyWeather() {
+    private void notifyWeather(TodayWeather today) {
+        // A notification that timed out can still be fetching its icon when the next sync's
+        // fan-out gets here; only one at a time checks and sets the last notification time
+        if (!sNotifying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            notifyWeatherIfDue(today);
+        } finally {
+            sNotifying.set(false);
+        }
+    }
+
+    private void notifyWeatherIfDue(TodayWeather today) {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
@@ -473,113 +646,99 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             String lastNotificationKey = context.getString(R.string.pref_last_notification);
             long lastSync = prefs.getLong(lastNotificationKey, 0);
 
-            if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
+            if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS && today != null) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
-
-                    int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
-                    Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
-                    String title = context.getString(R.string.app_name);
-
-                    // Define the text of the forecast.
-                    String contentText = String.format(context.getString(R.string.format_notification),
-                            desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
-
-                    // NotificationCompatBuilder is a very convenient way to build backward-compatible
-                    // notifications.  Just throw in some data.
-                    NotificationCompat.Builder mBuilder =
-                            new NotificationCompat.Builder(getContext())
-                                    .setColor(resources.getColor(R.color.primary_light))
-                                    .setSmallIcon(iconId)
-                                    .setLargeIcon(largeIcon)
-                                    .setContentTitle(title)
-                                    .setContentText(contentText);
-
-                    // Make something interesting happen when the user clicks on the notification.
-                    // In this case, opening the app is sufficient.
-                    Intent resultIntent = new Intent(context, MainActivity.class);
-
-                    // The stack builder object will contain an artificial back stack for the
-                    // started Activity.
-                    // This ensures that navigating backward from the Activity leads out of
-                    // your application to the Home screen.
-                    TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
-                    stackBuilder.addNextIntent(resultIntent);
-                    PendingIntent resultPendingIntent =
-                            stackBuilder.getPendingIntent(
-                                    0,
-                                    PendingIntent.FLAG_UPDATE_CURRENT
-                            );
-                    mBuilder.setContentIntent(resultPendingIntent);
-
-                    NotificationManager mNotificationManager =
-                            (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
-                    // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
-                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
-
-                    //refreshing last sync
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(lastNotificationKey, System.currentTimeMillis());
-                    editor.commit();
+                int weatherId = today.weatherId;
+                double high = today.high;
+                double low = today.low;
+                String desc = today.desc;
+
+                int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
+                Resources resources = context.getResources();
+                int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+                String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+                // On Honeycomb and higher devices, we can retrieve the size of the large icon
+                // Prior to that, we use a fixed size
+                @SuppressLint("InlinedApi")
+                int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                        ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                        : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+                @SuppressLint("InlinedApi")
+                int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                        ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                        : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+
+                // Retrieve the large icon
+                Bitmap largeIcon;
+                try {
+                    largeIcon = Glide.with(context)
+                            .load(artUrl)
+                            .asBitmap()
+                            .error(artResourceId)
+                            .fitCenter()
+                            .into(largeIconWidth, largeIconHeight).get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+                    largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
                 }
-                cursor.close();
+                String title = context.getString(R.string.app_name);
+
+                // Define the text of the forecast.
+                String contentText = String.format(context.getString(R.string.format_notification),
+                        desc,
+                        Utility.formatTemperature(context, high),
+                        Utility.formatTemperature(context, low));
+
+                // NotificationCompatBuilder is a very convenient way to build backward-compatible
+                // notifications.  Just throw in some data.
+                NotificationCompat.Builder mBuilder =
+                        new NotificationCompat.Builder(getContext())
+                                .setColor(resources.getColor(R.color.primary_light))
+                                .setSmallIcon(iconId)
+                                .setLargeIcon(largeIcon)
+                                .setContentTitle(title)
+                                .setContentText(contentText);
+
+                // Make something interesting happen when the user clicks on the notification.
+                // In this case, opening the app is sufficient.
+                Intent resultIntent = new Intent(context, MainActivity.class);
+
+                // The stack builder object will contain an artificial back stack for the
+                // started Activity.
+                // This ensures that navigating backward from the Activity leads out of
+                // your application to the Home screen.
+                TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+                stackBuilder.addNextIntent(resultIntent);
+                PendingIntent resultPendingIntent =
+                        stackBuilder.getPendingIntent(
+                                0,
+                                PendingIntent.FLAG_UPDATE_CURRENT
+                        );
+                mBuilder.setContentIntent(resultPendingIntent);
+
+                NotificationManager mNotificationManager =
+                        (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
+                // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+                mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+
+                //refreshing last sync
+                SharedPreferences.Editor editor = prefs.edit();
+                editor.putLong(lastNotificationKey, System.currentTimeMillis());
+                editor.commit();
             }
         }
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Helper method to look up a location in the weather database.
      *
      * @param locationSetting The location string used to request updates from the server.
-     * @param cityName        A human-readable city name, e.g "Mountain View"
-     * @param lat             the latitude of the city
-     * @param lon             the longitude of the city
-     * @return the row ID of the added location.
+     * @return the row ID of the location, or -1 if it hasn't been added yet.
      */
-    private long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
+    private long getLocationId(String locationSetting) {
+        long locationId = -1;
 
-        // First, check if the location with this city name exists in the db
         Cursor locationCursor = getContext().getContentResolver().query(
                 WeatherContract.LocationEntry.CONTENT_URI,
                 new String[]{WeatherContract.LocationEntry._ID},
@@ -590,30 +749,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         if (locationCursor.moveToFirst()) {
             int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
             locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
         }
 
         locationCursor.close();
-        // Wait, that worked?  Yes!
         return locationId;
     }
 
@@ -5,6 +5,9 @@ import android.content.Intent;
 import android.os.IBinder;
 import android.util.Log;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 public class SunshineSyncService extends Service {
     private static final Object sSyncAdapterLock = new Object();
     private static SunshineSyncAdapter sSunshineSyncAdapter = null;
@@ -23,4 +26,18 @@ public class SunshineSyncService extends Service {
     public IBinder onBind(Intent intent) {
         return sSunshineSyncAdapter.getSyncAdapterBinder();
     }
-}
\ No newline at end of file
+
+    /**
+     * Adds how long each update after a sync takes, and how many watch publishes were sent or
+     * skipped, to {@code adb shell dumpsys activity service SunshineSyncService}.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter out, String[] args) {
+        super.dump(fd, out, args);
+        synchronized (sSyncAdapterLock) {
+            if (sSunshineSyncAdapter != null) {
+                sSunshineSyncAdapter.dump(out);
+            }
+        }
+    }
+}
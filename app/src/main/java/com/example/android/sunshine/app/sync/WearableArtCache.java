@@ -0,0 +1,41 @@
+package com.example.android.sunshine.app.sync;
+
+import android.support.v4.util.LruCache;
+
+import com.google.android.gms.wearable.Asset;
+
+/**
+ * The custom art sent to the watch, encoded once per art URL, which names both the art pack and
+ * the weather condition.
+ * <p/>
+ * Handing the Data Layer the same bytes for the same art keeps the asset's digest stable, so
+ * the watch can tell it already has the icon without fetching it. Only the most recently used art
+ * is kept, enough for every condition of one art pack, since the cache lives as long as the
+ * process and switching packs would otherwise keep every pack's art.
+ */
+class WearableArtCache {
+
+    static class Art {
+        final Asset asset;
+
+        Art(Asset asset) {
+            this.asset = asset;
+        }
+    }
+
+    // An art pack has one image per kind of weather: storm, light rain, rain, snow, fog, clear,
+    // light clouds and clouds
+    private static final int MAX_ART = 8;
+
+    private final LruCache<String, Art> mArt = new LruCache<>(MAX_ART);
+
+    synchronized Art get(String artUrl) {
+        return mArt.get(artUrl);
+    }
+
+    synchronized Art put(String artUrl, byte[] png) {
+        Art art = new Art(Asset.createFromBytes(png));
+        mArt.put(artUrl, art);
+        return art;
+    }
+}
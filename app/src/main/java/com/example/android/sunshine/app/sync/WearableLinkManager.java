@@ -0,0 +1,233 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Owns the phone's connection to the wearable Data Layer and delivers pushes over it.
+ * <p/>
+ * Pushes can be enqueued from any thread without blocking. They run in order on the link's own
+ * thread once the client is connected. While it isn't, they wait in a small queue where a newer
+ * push replaces an older one with the same key, and the oldest is dropped when the queue is
+ * full. A connection that fails for a transient reason is retried with exponential backoff and
+ * jitter while pushes are waiting; any other failure, or one with nothing to send, waits for the
+ * next push, so a phone without a watch doesn't keep Play services busy.
+ */
+public class WearableLinkManager implements GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener, NodeApi.NodeListener {
+
+    private static final String LOG_TAG = WearableLinkManager.class.getSimpleName();
+
+    private static final int MAX_QUEUED_PUSHES = 8;
+
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 10 * 60 * 1000;
+
+    public interface Push {
+        /**
+         * Called on the link's thread with a connected client. May block.
+         */
+        void send(GoogleApiClient googleApiClient);
+    }
+
+    public interface Listener {
+        /**
+         * Called on the link's thread when a watch connects to the phone.
+         */
+        void onWatchConnected();
+    }
+
+    private static WearableLinkManager sInstance;
+
+    public static synchronized WearableLinkManager getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearableLinkManager(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final Handler mHandler;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final Random mRandom = new Random();
+
+    // Guarded by itself
+    private final LinkedHashMap<String, Push> mQueue = new LinkedHashMap<>();
+
+    // Only used on the link's thread
+    private long mBackoffMs = INITIAL_BACKOFF_MS;
+    private boolean mReconnectScheduled;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable mReconnect = new Runnable() {
+        @Override
+        public void run() {
+            mReconnectScheduled = false;
+            connect();
+        }
+    };
+
+    private WearableLinkManager(Context context) {
+        HandlerThread thread = new HandlerThread("WearableLink", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        Looper looper = thread.getLooper();
+        mHandler = new Handler(looper);
+
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .setHandler(mHandler)
+                .build();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                connect();
+            }
+        });
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Queues {@code push}, replacing any queued push with the same key, and sends it as soon as
+     * the watch can be reached.
+     */
+    public void enqueue(String key, Push push) {
+        synchronized (mQueue) {
+            // re-insert so the queue stays in the order pushes were last enqueued
+            mQueue.remove(key);
+            mQueue.put(key, push);
+            if (mQueue.size() > MAX_QUEUED_PUSHES) {
+                Iterator<String> oldest = mQueue.keySet().iterator();
+                Log.w(LOG_TAG, "Dropping queued push " + oldest.next());
+                oldest.remove();
+            }
+        }
+        mHandler.post(mFlush);
+    }
+
+    private void connect() {
+        if (!mGoogleApiClient.isConnected() && !mGoogleApiClient.isConnecting()) {
+            Log.d(LOG_TAG, "Connecting to Google Api");
+            mGoogleApiClient.connect();
+        }
+    }
+
+    private void flush() {
+        if (!mGoogleApiClient.isConnected()) {
+            // sent from onConnected; while backing off, the scheduled reconnect does that
+            if (!mReconnectScheduled) {
+                connect();
+            }
+            return;
+        }
+        List<Push> pushes;
+        synchronized (mQueue) {
+            pushes = new ArrayList<>(mQueue.values());
+            mQueue.clear();
+        }
+        for (Push push : pushes) {
+            try {
+                push.send(mGoogleApiClient);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Push failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void onConnected(Bundle bundle) {
+        Log.d(LOG_TAG, "Google Api Connected!");
+        mBackoffMs = INITIAL_BACKOFF_MS;
+        mHandler.removeCallbacks(mReconnect);
+        mReconnectScheduled = false;
+        Wearable.NodeApi.addListener(mGoogleApiClient, this);
+        flush();
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+        // the client reconnects by itself and calls onConnected again
+        Log.d(LOG_TAG, "onConnectionSuspended: " + cause);
+    }
+
+    @Override
+    public void onConnectionFailed(ConnectionResult connectionResult) {
+        Log.d(LOG_TAG, "onConnectionFailed: " + connectionResult);
+        if (isTransient(connectionResult.getErrorCode()) && hasQueuedPushes()) {
+            scheduleReconnect();
+        }
+        // otherwise the next enqueue connects again
+    }
+
+    private static boolean isTransient(int errorCode) {
+        switch (errorCode) {
+            case ConnectionResult.NETWORK_ERROR:
+            case ConnectionResult.SERVICE_VERSION_UPDATE_REQUIRED:
+            case ConnectionResult.INTERNAL_ERROR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean hasQueuedPushes() {
+        synchronized (mQueue) {
+            return !mQueue.isEmpty();
+        }
+    }
+
+    /**
+     * Tries to connect again after a random delay between half and all of the current backoff,
+     * which doubles up to MAX_BACKOFF_MS with every failure.
+     */
+    private void scheduleReconnect() {
+        if (mReconnectScheduled) {
+            return;
+        }
+        long delayMs = mBackoffMs / 2 + (long) (mRandom.nextDouble() * (mBackoffMs / 2));
+        mBackoffMs = Math.min(mBackoffMs * 2, MAX_BACKOFF_MS);
+        mReconnectScheduled = true;
+        Log.d(LOG_TAG, "Reconnecting in " + delayMs + "ms");
+        mHandler.postDelayed(mReconnect, delayMs);
+    }
+
+    @Override
+    public void onPeerConnected(Node peer) {
+        Log.d(LOG_TAG, "Watch connected: " + peer.getDisplayName());
+        for (Listener listener : mListeners) {
+            listener.onWatchConnected();
+        }
+    }
+
+    @Override
+    public void onPeerDisconnected(Node peer) {
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.util.Base64;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.core.ForecastCodec;
+import com.example.android.sunshine.core.ForecastDay;
+import com.example.android.sunshine.core.WeatherDates;
+import com.example.android.sunshine.core.WeatherRequestHandler;
+import com.example.android.sunshine.core.WearableData;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallbacks;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Puts today's weather and the forecast in the Data Layer for the watch face.
+ * <p/>
+ * Every sync asks for a publish, but the weather usually hasn't changed since the last one.
+ * The publisher remembers what it last sent in the preferences, so it's still known after the
+ * process dies: the formatted temperatures, the condition, the units, the forecast and the art
+ * pack. It skips both the art and the put while that stays the same. A forced publish, when
+ * the units setting changes or a watch connects, always goes out.
+ * <p/>
+ * Publishes go through the {@link WearableLinkManager}, so asking for one never blocks and one
+ * asked for while the watch can't be reached goes out once it can. Requests that pile up in
+ * the meantime become a single publish.
+ * <p/>
+ * What was last put is also kept in memory to answer the watch's own requests for the weather
+ * through a {@link WeatherRequestHandler}.
+ */
+public class WearablePublisher implements WearableLinkManager.Listener,
+        WeatherRequestHandler.Transport, WeatherRequestHandler.Source {
+
+    private static final String LOG_TAG = WearablePublisher.class.getSimpleName();
+
+    // Custom art is sent a little bigger than the watch draws it and scaled down there
+    private static final int WEARABLE_ART_SIZE = 100;
+
+    private static final String PUSH_KEY = "weather";
+    private static final String REPLY_PUSH_KEY_PREFIX = "reply:";
+
+    // The weather is stale once a periodic sync should have replaced it
+    private static final long SNAPSHOT_MAX_AGE_MS =
+            TimeUnit.SECONDS.toMillis(SunshineSyncAdapter.SYNC_INTERVAL);
+
+    private static final String[] TODAY_PROJECTION = new String[]{
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_ID = 0;
+    private static final int INDEX_MAX_TEMP = 1;
+    private static final int INDEX_MIN_TEMP = 2;
+
+    private static final String[] FORECAST_PROJECTION = new String[]{
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_FORECAST_DATE = 0;
+    private static final int INDEX_FORECAST_WEATHER_ID = 1;
+    private static final int INDEX_FORECAST_MIN_TEMP = 2;
+    private static final int INDEX_FORECAST_MAX_TEMP = 3;
+    private static final int INDEX_FORECAST_HUMIDITY = 4;
+    private static final int INDEX_FORECAST_WIND_SPEED = 5;
+    private static final int INDEX_FORECAST_DEGREES = 6;
+
+    private static WearablePublisher sInstance;
+
+    public static synchronized WearablePublisher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearablePublisher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final Context mContext;
+    private final WearableLinkManager mLink;
+    private final WearableArtCache mWearableArt = new WearableArtCache();
+    private final WeatherRequestHandler mRequestHandler =
+            new WeatherRequestHandler(this, this, SNAPSHOT_MAX_AGE_MS);
+    // Whether any of the requests since the last publish was forced
+    private final AtomicBoolean mForcePending = new AtomicBoolean();
+
+    private final AtomicInteger mSentCount = new AtomicInteger();
+    private final AtomicInteger mSuppressedCount = new AtomicInteger();
+
+    private final WearableLinkManager.Push mPublish = new WearableLinkManager.Push() {
+        @Override
+        public void send(GoogleApiClient googleApiClient) {
+            publish(googleApiClient, mForcePending.getAndSet(false));
+        }
+    };
+
+    private WearablePublisher(Context context) {
+        mContext = context;
+        mLink = WearableLinkManager.getInstance(context);
+        mLink.addListener(this);
+    }
+
+    @Override
+    public void onWatchConnected() {
+        requestPublish(true);
+    }
+
+    /**
+     * Answers a weather request from the watch without blocking.
+     */
+    public void handleRequest(String nodeId, byte[] request) {
+        mRequestHandler.handleRequest(nodeId, request, System.currentTimeMillis());
+    }
+
+    @Override
+    public void reply(final String nodeId, final byte[] response) {
+        // only the latest response to a watch matters
+        mLink.enqueue(REPLY_PUSH_KEY_PREFIX + nodeId, new WearableLinkManager.Push() {
+            @Override
+            public void send(GoogleApiClient googleApiClient) {
+                Wearable.MessageApi.sendMessage(googleApiClient, nodeId,
+                        WearableData.PATH_WEATHER_RESPONSE, response).await();
+            }
+        });
+    }
+
+    @Override
+    public void requestSnapshot(boolean stale) {
+        if (stale) {
+            // the sync publishes whatever it brings
+            SunshineSyncAdapter.syncImmediately(mContext);
+        } else {
+            // puts the weather again, which is a no-op for the watch if it's unchanged
+            requestPublish(true);
+        }
+    }
+
+    /**
+     * Publishes on the link's thread once the watch can be reached. Safe to call from any thread.
+     *
+     * @param force whether to publish even if nothing has changed since the last publish
+     */
+    public void requestPublish(boolean force) {
+        if (force) {
+            mForcePending.set(true);
+        }
+        mLink.enqueue(PUSH_KEY, mPublish);
+    }
+
+    /**
+     * Publishes the weather for the preferred location, unless it's the same as last time and
+     * {@code force} is false. Blocks while custom art is fetched.
+     */
+    private synchronized void publish(GoogleApiClient googleApiClient, boolean force) {
+        //Get weather information
+        String locationQuery = Utility.getPreferredLocation(mContext);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+        Cursor cursor = mContext.getContentResolver().query(weatherUri, TODAY_PROJECTION, null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        if (!cursor.moveToFirst()) {
+            cursor.close();
+            return;
+        }
+        int weatherId = cursor.getInt(INDEX_WEATHER_ID);
+        String highTemp = Utility.formatTemperature(mContext, cursor.getDouble(INDEX_MAX_TEMP));
+        String lowTemp = Utility.formatTemperature(mContext, cursor.getDouble(INDEX_MIN_TEMP));
+        cursor.close();
+
+        boolean metric = Utility.isMetric(mContext);
+        // The rest of the forecast lets the watch move on to the next day by itself
+        byte[] forecast = getForecast(locationQuery);
+        // The watch has its own copy of Sunshine's icons, so only custom art needs to be sent
+        String artUrl = Utility.usingLocalGraphics(mContext)
+                ? null
+                : Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+
+        String payload = highTemp + '\n' + lowTemp + '\n' + weatherId + '\n' + metric
+                + '\n' + (forecast != null ? Base64.encodeToString(forecast, Base64.NO_WRAP) : "")
+                + '\n' + artUrl;
+        if (!force && payload.equals(getLastPayload())) {
+            mRequestHandler.confirmSnapshot(System.currentTimeMillis());
+            mSuppressedCount.incrementAndGet();
+            Log.d(LOG_TAG, "Wearable data unchanged, " + getCounts());
+            return;
+        }
+
+        //Send data to wearable
+        Log.d(LOG_TAG, "Sending data to wearables...");
+        PutDataMapRequest mapRequest = PutDataMapRequest.create(WearableData.PATH_WEATHER);
+        mapRequest.getDataMap().putString(WearableData.KEY_HIGH_TEMP, highTemp);
+        mapRequest.getDataMap().putString(WearableData.KEY_LOW_TEMP, lowTemp);
+        mapRequest.getDataMap().putInt(WearableData.KEY_WEATHER_ID, weatherId);
+        mapRequest.getDataMap().putBoolean(WearableData.KEY_METRIC, metric);
+        if (forecast != null) {
+            mapRequest.getDataMap().putByteArray(WearableData.KEY_FORECAST, forecast);
+        }
+        boolean complete = true;
+        if (artUrl != null) {
+            WearableArtCache.Art art = getArt(artUrl);
+            if (art != null) {
+                mapRequest.getDataMap().putAsset(WearableData.KEY_ICON, art.asset);
+            } else {
+                complete = false;
+            }
+        }
+
+        // An identical item is a no-op put that doesn't wake the watch, so the version only
+        // moves on when the weather it shows does.
+        mapRequest.getDataMap().putLong(WearableData.KEY_VERSION, getVersion(payload));
+
+        if (!complete) {
+            // without the art, the next publish should try again
+            forgetLastPayload();
+        }
+        mSentCount.incrementAndGet();
+        Log.d(LOG_TAG, "Wearable data sent, " + getCounts());
+        Wearable.DataApi.putDataItem(googleApiClient, mapRequest.asPutDataRequest())
+                .setResultCallback(new ResultCallbacks<DataApi.DataItemResult>() {
+                    @Override
+                    public void onSuccess(DataApi.DataItemResult dataItemResult) {
+                        Log.d(LOG_TAG, "Success!");
+                        setSnapshot(DataMapItem.fromDataItem(dataItemResult.getDataItem()).getDataMap());
+                    }
+
+                    @Override
+                    public void onFailure(Status status) {
+                        Log.d(LOG_TAG, "Failure!");
+                        // so the next publish tries again
+                        synchronized (WearablePublisher.this) {
+                            forgetLastPayload();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Writes how many publishes put the weather in the Data Layer and how many were skipped
+     * because nothing had changed.
+     */
+    void dump(PrintWriter out) {
+        out.println("wearables: " + getCounts());
+    }
+
+    private String getCounts() {
+        return mSentCount.get() + " sent, " + mSuppressedCount.get() + " suppressed";
+    }
+
+    /**
+     * Keeps the weather the Data Layer now has for answering the watch's requests. A message
+     * can't carry the asset, so the response names it by digest instead.
+     */
+    private void setSnapshot(DataMap dataMap) {
+        Asset icon = dataMap.getAsset(WearableData.KEY_ICON);
+        if (icon != null) {
+            dataMap.remove(WearableData.KEY_ICON);
+            dataMap.putString(WearableData.KEY_ICON_DIGEST, icon.getDigest());
+        }
+        mRequestHandler.setSnapshot(dataMap.getLong(WearableData.KEY_VERSION),
+                dataMap.toByteArray(), System.currentTimeMillis());
+    }
+
+    /**
+     * Encodes the forecast for the location from today on, for the watch.
+     *
+     * @return the forecast record, or null if there is no forecast
+     */
+    private byte[] getForecast(String locationQuery) {
+        long now = System.currentTimeMillis();
+        Uri forecastUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(locationQuery, now);
+        Cursor cursor = mContext.getContentResolver().query(forecastUri, FORECAST_PROJECTION,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+
+        // Dates are stored as the start of the day in this time zone
+        TimeZone timeZone = TimeZone.getDefault();
+
+        List<ForecastDay> days = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                days.add(new ForecastDay(
+                        WeatherDates.getJulianDay(cursor.getLong(INDEX_FORECAST_DATE), timeZone),
+                        cursor.getInt(INDEX_FORECAST_WEATHER_ID),
+                        cursor.getDouble(INDEX_FORECAST_MIN_TEMP),
+                        cursor.getDouble(INDEX_FORECAST_MAX_TEMP),
+                        cursor.getDouble(INDEX_FORECAST_HUMIDITY),
+                        cursor.getDouble(INDEX_FORECAST_WIND_SPEED),
+                        cursor.getDouble(INDEX_FORECAST_DEGREES)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return days.isEmpty() ? null : ForecastCodec.encode(days);
+    }
+
+    /**
+     * @return what was last put, or null if the next publish should go out anyway
+     */
+    private String getLastPayload() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        return prefs.getString(mContext.getString(R.string.pref_wearable_payload), null);
+    }
+
+    /**
+     * Makes the next publish go out even if the weather is the same. The version is kept, so
+     * the next one still moves on from it.
+     */
+    private void forgetLastPayload() {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .remove(mContext.getString(R.string.pref_wearable_payload))
+                .commit();
+    }
+
+    /**
+     * Returns the version of the wearable data, which changes whenever {@code payload} does,
+     * and keeps {@code payload} as the last put.
+     */
+    private long getVersion(String payload) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String payloadKey = mContext.getString(R.string.pref_wearable_payload);
+        String versionKey = mContext.getString(R.string.pref_wearable_version);
+
+        long version = prefs.getLong(versionKey, 0);
+        if (!payload.equals(prefs.getString(payloadKey, null))) {
+            // a time keeps versions from different phones comparable on the watch
+            version = Math.max(version + 1, System.currentTimeMillis());
+            prefs.edit()
+                    .putString(payloadKey, payload)
+                    .putLong(versionKey, version)
+                    .commit();
+        }
+        return version;
+    }
+
+    /**
+     * Fetches the art pack's image, sized for the watch, unless it has been sent before.
+     *
+     * @return the image as a PNG asset, or null if it couldn't be fetched, in which case the
+     * watch falls back to its own icon
+     */
+    private WearableArtCache.Art getArt(String artUrl) {
+        WearableArtCache.Art cached = mWearableArt.get(artUrl);
+        if (cached != null) {
+            return cached;
+        }
+
+        Bitmap art;
+        try {
+            art = Glide.with(mContext)
+                    .load(artUrl)
+                    .asBitmap()
+                    .fitCenter()
+                    .into(WEARABLE_ART_SIZE, WEARABLE_ART_SIZE).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving wearable art from " + artUrl, e);
+            return null;
+        }
+        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        art.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
+        return mWearableArt.put(artUrl, byteStream.toByteArray());
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.android.sunshine.app.sync;
+
+import com.example.android.sunshine.core.WearableData;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.WearableListenerService;
+
+/**
+ * Receives the watch's requests for the weather and hands them to the {@link WearablePublisher}.
+ */
+public class WearableRequestService extends WearableListenerService {
+
+    @Override
+    public void onMessageReceived(MessageEvent messageEvent) {
+        if (WearableData.PATH_WEATHER_REQUEST.equals(messageEvent.getPath())) {
+            WearablePublisher.getInstance(this)
+                    .handleRequest(messageEvent.getSourceNodeId(), messageEvent.getData());
+        }
+    }
+}
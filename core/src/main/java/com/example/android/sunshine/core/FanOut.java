@@ -0,0 +1,199 @@
+package com.example.android.sunshine.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands one snapshot to several independent consumers at once, off the caller's thread.
+ * <p/>
+ * {@link #dispatch} returns straight away. A dispatcher thread reads the snapshot once, starts
+ * every consumer on a small pool and waits for each up to its own timeout, interrupting one that
+ * takes longer, so a slow consumer neither holds up the others nor keeps its thread forever.
+ * The latency of each consumer, from the snapshot being read to the consumer being done, is
+ * counted per consumer, along with its timeouts and failures.
+ */
+public class FanOut<T> {
+
+    public interface Consumer<T> {
+        String getName();
+
+        /**
+         * How long the consumer may take before it's interrupted.
+         */
+        long getTimeoutMs();
+
+        /**
+         * @param snapshot what the reader returned, possibly null
+         */
+        void accept(T snapshot) throws Exception;
+    }
+
+    public interface Listener {
+        /**
+         * Called on the dispatcher thread once every consumer is done or has timed out.
+         *
+         * @param summary each consumer's latency this time, on one line
+         */
+        void onFanOutComplete(String summary);
+    }
+
+    /**
+     * The counters of one consumer.
+     */
+    private static class Stats {
+        final AtomicLong runs = new AtomicLong();
+        final AtomicLong nanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        void onDone(long latencyNanos) {
+            runs.incrementAndGet();
+            nanos.addAndGet(latencyNanos);
+            long max;
+            while ((max = maxNanos.get()) < latencyNanos && !maxNanos.compareAndSet(max, latencyNanos)) {
+                // retry
+            }
+        }
+    }
+
+    // How long an idle thread waits for more work
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final List<Consumer<T>> mConsumers;
+    private final List<Stats> mStats = new ArrayList<>();
+    private final Listener mListener;
+    private final ThreadPoolExecutor mDispatcher;
+    private final ThreadPoolExecutor mPool;
+
+    /**
+     * @param threads  how many consumers run at once at most
+     * @param listener told about each fan-out when it's complete, or null
+     */
+    public FanOut(List<Consumer<T>> consumers, int threads, Listener listener) {
+        mConsumers = new ArrayList<>(consumers);
+        for (int i = 0; i < mConsumers.size(); i++) {
+            mStats.add(new Stats());
+        }
+        mListener = listener;
+        // one fan-out at a time, in the order they were dispatched
+        mDispatcher = createExecutor(1, "FanOut");
+        mPool = createExecutor(threads, "FanOut-consumer");
+    }
+
+    private static ThreadPoolExecutor createExecutor(int threads, final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + mCount.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        // no threads are kept between fan-outs
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Reads the snapshot with {@code reader} and hands it to every consumer, in the background.
+     * If the reader fails, the consumers get null.
+     */
+    public void dispatch(final Callable<T> reader) {
+        mDispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                long startNanos = System.nanoTime();
+                T snapshot;
+                try {
+                    snapshot = reader.call();
+                } catch (Exception e) {
+                    snapshot = null;
+                }
+                fanOut(snapshot, System.nanoTime() - startNanos);
+            }
+        });
+    }
+
+    private void fanOut(final T snapshot, long readNanos) {
+        final long startNanos = System.nanoTime();
+        int count = mConsumers.size();
+        final long[] latencies = new long[count];
+        List<Future<?>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Consumer<T> consumer = mConsumers.get(i);
+            final Stats stats = mStats.get(i);
+            final int index = i;
+            futures.add(mPool.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    consumer.accept(snapshot);
+                    long latencyNanos = System.nanoTime() - startNanos;
+                    latencies[index] = latencyNanos;
+                    stats.onDone(latencyNanos);
+                    return null;
+                }
+            }));
+        }
+
+        StringBuilder summary = new StringBuilder("snapshot ")
+                .append(TimeUnit.NANOSECONDS.toMillis(readNanos)).append("ms");
+        for (int i = 0; i < count; i++) {
+            Consumer<T> consumer = mConsumers.get(i);
+            Stats stats = mStats.get(i);
+            long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(consumer.getTimeoutMs());
+            String outcome;
+            try {
+                futures.get(i).get(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                // the future's completion makes its latency visible here
+                outcome = TimeUnit.NANOSECONDS.toMillis(latencies[i]) + "ms";
+            } catch (TimeoutException e) {
+                futures.get(i).cancel(true);
+                stats.timeouts.incrementAndGet();
+                outcome = "timed out";
+            } catch (ExecutionException e) {
+                stats.failures.incrementAndGet();
+                outcome = "failed: " + e.getCause();
+            } catch (InterruptedException e) {
+                // shutting down; the rest finish or time out on their own
+                Thread.currentThread().interrupt();
+                return;
+            }
+            summary.append(", ").append(consumer.getName()).append(' ').append(outcome);
+        }
+        if (mListener != null) {
+            mListener.onFanOutComplete(summary.toString());
+        }
+    }
+
+    /**
+     * The counters of every consumer since this was created, on one line each.
+     */
+    public String toLogLines() {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < mConsumers.size(); i++) {
+            Stats stats = mStats.get(i);
+            long runs = stats.runs.get();
+            lines.append(String.format(Locale.US, "%s: %d runs, %dms mean, %dms max, %d timeouts, %d failures%n",
+                    mConsumers.get(i).getName(), runs,
+                    runs > 0 ? TimeUnit.NANOSECONDS.toMillis(stats.nanos.get() / runs) : 0,
+                    TimeUnit.NANOSECONDS.toMillis(stats.maxNanos.get()),
+                    stats.timeouts.get(), stats.failures.get()));
+        }
+        return lines.toString();
+    }
+}
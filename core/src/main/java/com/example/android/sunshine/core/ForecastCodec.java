@@ -0,0 +1,165 @@
+package com.example.android.sunshine.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary record format for the forecast the phone sends to the watch.
+ * <p/>
+ * A record is a version byte and a day count, the first day's Julian day as a fixed 4-byte
+ * int, then one entry per day:
+ * <ul>
+ * <li>the day, as a zig-zag varint delta from the previous day (1 for consecutive days)</li>
+ * <li>the condition id, 2 bytes</li>
+ * <li>min and max temperatures in tenths of a degree, zig-zag varints</li>
+ * <li>humidity in whole percent, 1 byte</li>
+ * <li>wind speed in tenths of a m/s and direction in whole degrees, 2 bytes each</li>
+ * </ul>
+ * Multi-byte fixed-width fields are big-endian. A 14 day forecast fits in under 200 bytes,
+ * where a DataMap would spend more than that on its key names alone.
+ */
+public class ForecastCodec {
+
+    public static final int VERSION = 1;
+
+    // Version and count, then the first day
+    private static final int HEADER_SIZE = 2 + 4;
+    // Largest possible day entry: 5 + 2 + 5 + 5 + 1 + 2 + 2
+    private static final int MAX_DAY_SIZE = 22;
+
+    private ForecastCodec() {
+    }
+
+    /**
+     * @param days at most 255 days, in any order
+     */
+    public static byte[] encode(List<ForecastDay> days) {
+        if (days.size() > 0xff) {
+            throw new IllegalArgumentException("Too many days: " + days.size());
+        }
+        Writer out = new Writer(HEADER_SIZE + days.size() * MAX_DAY_SIZE);
+        out.writeByte(VERSION);
+        out.writeByte(days.size());
+        int previousDay = days.isEmpty() ? 0 : days.get(0).julianDay;
+        out.writeInt(previousDay);
+        for (ForecastDay day : days) {
+            out.writeSignedVarint(day.julianDay - previousDay);
+            previousDay = day.julianDay;
+            out.writeShort(day.weatherId);
+            out.writeSignedVarint(toTenths(day.minTemp));
+            out.writeSignedVarint(toTenths(day.maxTemp));
+            out.writeByte(clamp((int) Math.round(day.humidity), 0xff));
+            out.writeShort(clamp(toTenths(day.windSpeed), 0xffff));
+            out.writeShort(clamp((int) Math.round(day.windDirection), 0xffff));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code record} is truncated or of an unknown version
+     */
+    public static List<ForecastDay> decode(byte[] record) {
+        Reader in = new Reader(record);
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unknown forecast record version " + version);
+        }
+        int count = in.readByte();
+        int julianDay = in.readInt();
+        List<ForecastDay> days = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            julianDay += in.readSignedVarint();
+            int weatherId = in.readShort();
+            double minTemp = in.readSignedVarint() / 10.0;
+            double maxTemp = in.readSignedVarint() / 10.0;
+            int humidity = in.readByte();
+            double windSpeed = in.readShort() / 10.0;
+            int windDirection = in.readShort();
+            days.add(new ForecastDay(julianDay, weatherId, minTemp, maxTemp,
+                    humidity, windSpeed, windDirection));
+        }
+        return days;
+    }
+
+    private static int toTenths(double value) {
+        return (int) Math.round(value * 10);
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+
+    private static class Writer {
+        private byte[] mBytes;
+        private int mPosition;
+
+        Writer(int capacity) {
+            mBytes = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            mBytes[mPosition++] = (byte) value;
+        }
+
+        void writeShort(int value) {
+            writeByte(value >>> 8);
+            writeByte(value);
+        }
+
+        void writeInt(int value) {
+            writeShort(value >>> 16);
+            writeShort(value);
+        }
+
+        void writeSignedVarint(int value) {
+            // zig-zag, so small negative values stay short too
+            int zigZag = (value << 1) ^ (value >> 31);
+            while ((zigZag & ~0x7f) != 0) {
+                writeByte((zigZag & 0x7f) | 0x80);
+                zigZag >>>= 7;
+            }
+            writeByte(zigZag);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(mBytes, mPosition);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] mBytes;
+        private int mPosition;
+
+        Reader(byte[] bytes) {
+            mBytes = bytes;
+        }
+
+        int readByte() {
+            if (mPosition >= mBytes.length) {
+                throw new IllegalArgumentException("Truncated forecast record");
+            }
+            return mBytes[mPosition++] & 0xff;
+        }
+
+        int readShort() {
+            return (readByte() << 8) | readByte();
+        }
+
+        int readInt() {
+            return (readShort() << 16) | readShort();
+        }
+
+        int readSignedVarint() {
+            int zigZag = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                zigZag |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigZag >>> 1) ^ -(zigZag & 1);
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in forecast record");
+        }
+    }
+}
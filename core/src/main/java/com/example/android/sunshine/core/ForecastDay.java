@@ -0,0 +1,30 @@
+package com.example.android.sunshine.core;
+
+/**
+ * One day of the forecast, in the units the weather table stores: temperatures in Celsius,
+ * humidity in percent, wind speed in m/s and wind direction in degrees.
+ */
+public class ForecastDay {
+
+    /**
+     * The day, as a Julian day number in the phone's time zone.
+     */
+    public final int julianDay;
+    public final int weatherId;
+    public final double minTemp;
+    public final double maxTemp;
+    public final double humidity;
+    public final double windSpeed;
+    public final double windDirection;
+
+    public ForecastDay(int julianDay, int weatherId, double minTemp, double maxTemp,
+                       double humidity, double windSpeed, double windDirection) {
+        this.julianDay = julianDay;
+        this.weatherId = weatherId;
+        this.minTemp = minTemp;
+        this.maxTemp = maxTemp;
+        this.humidity = humidity;
+        this.windSpeed = windSpeed;
+        this.windDirection = windDirection;
+    }
+}
@@ -0,0 +1,381 @@
+package com.example.android.sunshine.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Fetches forecasts over HTTP with gzip and conditional requests, keeping the validators and a
+ * gzipped copy of the last body of each location on disk.
+ * <p/>
+ * A fetch sends the location's {@code ETag} and {@code Last-Modified} back as
+ * {@code If-None-Match} and {@code If-Modified-Since}, so a forecast that hasn't changed costs
+ * a 304 with no body, and {@link #fetch} returns {@link Response#isNotModified()} without
+ * anything to parse. A new body is decompressed as it's read, while its bytes go to a
+ * temporary file as they were sent, or gzipped if the server didn't. It only replaces the
+ * cached copy when the caller {@link Response#commit() commits} it, once it has parsed: a
+ * response that didn't parse must not be answered with a 304 next time.
+ * <p/>
+ * Fetches of different locations can run at once; fetches of the same one must not.
+ */
+public class ForecastFetcher {
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "last-modified";
+    private static final String KEY_FETCHED_MS = "fetched-ms";
+
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private final File mDir;
+
+    /**
+     * @param dir where to keep the cache, created if need be; may be cleared at any time
+     */
+    public ForecastFetcher(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * The result of a fetch. Must be closed.
+     */
+    public class Response implements Closeable {
+        private final String mKey;
+        private final HttpURLConnection mConnection;
+        private final int mCode;
+        private final long mFetchedMs;
+        private final CountingInputStream mBody;
+        private final File mTempFile;
+        private final OutputStream mCopy;
+        private Reader mReader;
+
+        Response(String key, HttpURLConnection connection, int code, long fetchedMs,
+                 CountingInputStream body, File tempFile, OutputStream copy) {
+            mKey = key;
+            mConnection = connection;
+            mCode = code;
+            mFetchedMs = fetchedMs;
+            mBody = body;
+            mTempFile = tempFile;
+            mCopy = copy;
+        }
+
+        /**
+         * @return the HTTP response code
+         */
+        public int getCode() {
+            return mCode;
+        }
+
+        /**
+         * @return whether the cached forecast is still current, in which case there's no body
+         */
+        public boolean isNotModified() {
+            return mCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
+
+        /**
+         * @return when the forecast was first fetched, which is earlier than now if it wasn't
+         * modified
+         */
+        public long getFetchedMs() {
+            return mFetchedMs;
+        }
+
+        /**
+         * @return the bytes of body received so far, as they were sent
+         */
+        public long getTransferredBytes() {
+            return mBody != null ? mBody.mCount : 0;
+        }
+
+        /**
+         * @return the decompressed body, null if the forecast wasn't modified
+         */
+        public Reader getReader() throws IOException {
+            if (mReader == null && mBody != null) {
+                InputStream in = mBody;
+                if (isGzipped(mConnection)) {
+                    in = new GZIPInputStream(in);
+                } else if (mCopy != null) {
+                    mBody.mCopy = new GZIPOutputStream(mCopy);
+                }
+                mReader = new InputStreamReader(in, CHARSET);
+            }
+            return mReader;
+        }
+
+        /**
+         * Keeps the body as the location's cached forecast, along with its validators.
+         * Anything of the body that wasn't read is read first.
+         *
+         * @throws IllegalStateException if there's no body to keep
+         */
+        public void commit() throws IOException {
+            if (mTempFile == null) {
+                throw new IllegalStateException("Nothing to commit");
+            }
+            getReader();
+            byte[] chunk = new byte[4096];
+            while (mBody.read(chunk) != -1) {
+                // copies the rest
+            }
+            mBody.mCopy.close();
+
+            Properties meta = new Properties();
+            meta.setProperty(KEY_URL, mConnection.getURL().toString());
+            putIfNotNull(meta, KEY_ETAG, mConnection.getHeaderField("ETag"));
+            putIfNotNull(meta, KEY_LAST_MODIFIED, mConnection.getHeaderField("Last-Modified"));
+            meta.setProperty(KEY_FETCHED_MS, Long.toString(mFetchedMs));
+
+            File bodyFile = getBodyFile(mKey);
+            File metaFile = getMetaFile(mKey);
+            // without its metadata a body is never used, so drop that first
+            if ((metaFile.exists() && !metaFile.delete()) || !mTempFile.renameTo(bodyFile)) {
+                throw new IOException("Can't replace " + bodyFile);
+            }
+            writeMeta(metaFile, meta);
+        }
+
+        @Override
+        public void close() {
+            if (mBody != null) {
+                mBody.closeSource();
+            }
+            if (mTempFile != null) {
+                closeQuietly(mBody.mCopy);
+                // gone already if committed
+                mTempFile.delete();
+            }
+            mConnection.disconnect();
+        }
+    }
+
+    /**
+     * Fetches the forecast at {@code url} for the location {@code key}, conditionally if there's
+     * a cached one from the same URL.
+     * <p/>
+     * An error response is returned like any other, so its body can be read, but it can't be
+     * committed.
+     */
+    public Response fetch(URL url, String key) throws IOException {
+        Properties meta = readMeta(key);
+        if (meta != null && !url.toString().equals(meta.getProperty(KEY_URL))) {
+            meta = null;
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        Response response = null;
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            // asking for it ourselves turns off transparent decompression, so the gzipped
+            // bytes can be kept as they are
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (meta != null) {
+                setIfNotNull(connection, "If-None-Match", meta.getProperty(KEY_ETAG));
+                setIfNotNull(connection, "If-Modified-Since", meta.getProperty(KEY_LAST_MODIFIED));
+            }
+            int code = connection.getResponseCode();
+
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                long fetchedMs = meta != null ? parseLong(meta.getProperty(KEY_FETCHED_MS)) : 0;
+                response = new Response(key, connection, code, fetchedMs, null, null, null);
+            } else if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                InputStream error = connection.getErrorStream();
+                CountingInputStream body = new CountingInputStream(
+                        error != null ? error : new ByteArrayInputStream(new byte[0]));
+                response = new Response(key, connection, code, System.currentTimeMillis(), body, null, null);
+            } else {
+                if (!mDir.isDirectory() && !mDir.mkdirs()) {
+                    throw new IOException("Can't create " + mDir);
+                }
+                CountingInputStream body = new CountingInputStream(connection.getInputStream());
+                File tempFile = File.createTempFile("forecast", ".tmp", mDir);
+                OutputStream copy = new FileOutputStream(tempFile);
+                body.mCopy = copy;
+                response = new Response(key, connection, code, System.currentTimeMillis(), body, tempFile, copy);
+            }
+            return response;
+        } finally {
+            if (response == null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @return the location's cached forecast, or null if there's none
+     */
+    public Reader openCached(String key) throws IOException {
+        if (readMeta(key) == null) {
+            return null;
+        }
+        return new InputStreamReader(new GZIPInputStream(new FileInputStream(getBodyFile(key))), CHARSET);
+    }
+
+    /**
+     * Forgets the location's cached forecast, so the next fetch isn't conditional.
+     */
+    public void invalidate(String key) {
+        getMetaFile(key).delete();
+        getBodyFile(key).delete();
+    }
+
+    private Properties readMeta(String key) {
+        File metaFile = getMetaFile(key);
+        if (!metaFile.exists() || !getBodyFile(key).exists()) {
+            return null;
+        }
+        Properties meta = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(metaFile);
+            meta.load(in);
+            return meta;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void writeMeta(File file, Properties meta) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            meta.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private File getMetaFile(String key) {
+        return new File(mDir, toFileName(key) + ".properties");
+    }
+
+    private File getBodyFile(String key) {
+        return new File(mDir, toFileName(key) + ".json.gz");
+    }
+
+    /**
+     * @return the key's UTF-8 bytes in hex, which is safe on any file system
+     */
+    private static String toFileName(String key) {
+        try {
+            byte[] bytes = key.getBytes(CHARSET);
+            StringBuilder name = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16));
+                name.append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.toString();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static boolean isGzipped(HttpURLConnection connection) {
+        return "gzip".equalsIgnoreCase(connection.getContentEncoding());
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void putIfNotNull(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private static void setIfNotNull(HttpURLConnection connection, String header, String value) {
+        if (value != null) {
+            connection.setRequestProperty(header, value);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing more to do with it
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read through it and copies them to {@link #mCopy}, if set. Closing it
+     * leaves the connection's stream open, so a body can be committed after the parser that
+     * read it has closed it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long mCount;
+        OutputStream mCopy;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+                if (mCopy != null) {
+                    mCopy.write(b);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+                if (mCopy != null) {
+                    mCopy.write(buffer, offset, read);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // see closeSource()
+        }
+
+        void closeSource() {
+            closeQuietly(in);
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // so skipped bytes are copied too
+            byte[] chunk = new byte[(int) Math.min(count, 4096)];
+            int read = read(chunk, 0, chunk.length);
+            return Math.max(read, 0);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.android.sunshine.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches and parses the forecasts of many locations at once.
+ * <p/>
+ * Each location is fetched with a {@link ForecastFetcher} and streamed through an
+ * {@link OwmForecastParser} on a bounded pool of threads, with at most a few connections to any
+ * one host at a time, which is what its connection pool keeps alive. Nothing is stored: each
+ * location's {@link Result} carries what its handler collected, so the caller can write every
+ * location in one transaction and then {@link Result#commit() commit} the fetches it stored.
+ */
+public class ForecastSyncEngine {
+
+    /**
+     * Makes the handler that collects one location's forecast. Called on the sync thread.
+     */
+    public interface HandlerFactory<H extends OwmForecastParser.Handler> {
+        H create(String location);
+    }
+
+    /**
+     * What came of syncing one location. Must be closed.
+     */
+    public static class Result<H extends OwmForecastParser.Handler> implements Closeable {
+        public final String location;
+        public final H handler;
+
+        private ForecastFetcher.Response mResponse;
+        private int mCode;
+        private Exception mError;
+        private long mFetchNanos;
+        private long mParseNanos;
+
+        Result(String location, H handler) {
+            this.location = location;
+            this.handler = handler;
+        }
+
+        /**
+         * @return whether {@link #handler} has a complete forecast to store
+         */
+        public boolean isOk() {
+            return mError == null && mCode == HttpURLConnection.HTTP_OK && !isNotModified();
+        }
+
+        /**
+         * @return whether the forecast is the one fetched last time
+         */
+        public boolean isNotModified() {
+            return mResponse != null && mResponse.isNotModified();
+        }
+
+        /**
+         * @return the response code, from the response's body if it has one; 0 if there was
+         * no response
+         */
+        public int getCode() {
+            return mCode;
+        }
+
+        /**
+         * @return what went wrong fetching or parsing, an {@link IOException} or an
+         * {@link IllegalArgumentException}, or null
+         */
+        public Exception getError() {
+            return mError;
+        }
+
+        /**
+         * @return when the forecast was first fetched; its first day is the day of this
+         */
+        public long getFetchedMs() {
+            return mResponse != null ? mResponse.getFetchedMs() : 0;
+        }
+
+        /**
+         * @return the time from sending the request to having the response's headers
+         */
+        public long getFetchNanos() {
+            return mFetchNanos;
+        }
+
+        /**
+         * @return the time spent reading and parsing the body, which includes receiving it
+         */
+        public long getParseNanos() {
+            return mParseNanos;
+        }
+
+        public long getTransferredBytes() {
+            return mResponse != null ? mResponse.getTransferredBytes() : 0;
+        }
+
+        /**
+         * Keeps the forecast as the one to fetch conditionally next time. Only call this once
+         * it's stored.
+         */
+        public void commit() throws IOException {
+            mResponse.commit();
+        }
+
+        @Override
+        public void close() {
+            if (mResponse != null) {
+                mResponse.close();
+            }
+        }
+    }
+
+    // How long an idle sync thread waits for more work
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ForecastFetcher mFetcher;
+    private final int mConnectionsPerHost;
+    private final ThreadPoolExecutor mExecutor;
+    private final ConcurrentHashMap<String, Semaphore> mHostPermits = new ConcurrentHashMap<>();
+
+    /**
+     * @param threads            how many locations are synced at once at most
+     * @param connectionsPerHost how many of those can be connected to the same host
+     */
+    public ForecastSyncEngine(ForecastFetcher fetcher, int threads, int connectionsPerHost) {
+        mFetcher = fetcher;
+        mConnectionsPerHost = connectionsPerHost;
+        mExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ForecastSync-" + mCount.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        // no threads are kept between syncs
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Syncs every location, waiting for them all.
+     *
+     * @param urls the forecast URL of each location, keyed by its location setting
+     * @return a result per location, in the order of {@code urls}
+     */
+    public <H extends OwmForecastParser.Handler> List<Result<H>> syncAll(Map<String, URL> urls,
+            HandlerFactory<H> factory) throws InterruptedException {
+        List<Result<H>> results = new ArrayList<>(urls.size());
+        List<Future<Result<H>>> futures = new ArrayList<>(urls.size());
+        for (Map.Entry<String, URL> entry : urls.entrySet()) {
+            final Result<H> result = new Result<>(entry.getKey(), factory.create(entry.getKey()));
+            final URL url = entry.getValue();
+            results.add(result);
+            futures.add(mExecutor.submit(new Callable<Result<H>>() {
+                @Override
+                public Result<H> call() throws InterruptedException {
+                    sync(url, result);
+                    return result;
+                }
+            }));
+        }
+        try {
+            for (Future<Result<H>> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            // sync() catches what it expects
+            closeAll(results);
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            for (Future<Result<H>> future : futures) {
+                future.cancel(true);
+            }
+            closeAll(results);
+            throw e;
+        }
+        return results;
+    }
+
+    private void sync(URL url, Result<?> result) throws InterruptedException {
+        Semaphore permits = getHostPermits(url.getHost());
+        permits.acquire();
+        try {
+            long startNanos = System.nanoTime();
+            ForecastFetcher.Response response = mFetcher.fetch(url, result.location);
+            result.mResponse = response;
+            result.mCode = response.getCode();
+            long fetchedNanos = System.nanoTime();
+            result.mFetchNanos = fetchedNanos - startNanos;
+            if (!response.isNotModified()
+                    && response.getCode() < HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                // a 4xx body has the code too
+                result.mCode = OwmForecastParser.parse(response.getReader(), result.handler);
+                result.mParseNanos = System.nanoTime() - fetchedNanos;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            result.mError = e;
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Semaphore getHostPermits(String host) {
+        Semaphore permits = mHostPermits.get(host);
+        if (permits == null) {
+            Semaphore created = new Semaphore(mConnectionsPerHost);
+            permits = mHostPermits.putIfAbsent(host, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+        return permits;
+    }
+
+    /**
+     * Closes every result.
+     */
+    public static void closeAll(List<? extends Result<?>> results) {
+        for (Result<?> result : results) {
+            result.close();
+        }
+    }
+}
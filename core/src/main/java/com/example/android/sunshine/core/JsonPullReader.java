@@ -0,0 +1,432 @@
+package com.example.android.sunshine.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A pull parser for JSON, read one token at a time straight from a {@link Reader}.
+ * <p/>
+ * It has the shape of {@code android.util.JsonReader}, which Sunshine can't use on every
+ * version it supports, and only what parsing OpenWeatherMap responses needs. Input is buffered
+ * internally, so the reader shouldn't be wrapped in a {@code BufferedReader}.
+ */
+class JsonPullReader {
+
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL,
+        END_DOCUMENT
+    }
+
+    // What the innermost scope has seen so far
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader mIn;
+    private final char[] mBuffer = new char[4096];
+    private int mPos;
+    private int mLimit;
+
+    private int[] mStack = new int[16];
+    private int mStackSize = 1;
+
+    private Token mPeeked;
+    private final StringBuilder mText = new StringBuilder();
+
+    JsonPullReader(Reader in) {
+        mIn = in;
+        mStack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the input isn't valid JSON
+     * @throws EOFException             if the input ends early
+     */
+    Token peek() throws IOException {
+        if (mPeeked != null) {
+            return mPeeked;
+        }
+        int c;
+        switch (mStack[mStackSize - 1]) {
+            case EMPTY_DOCUMENT:
+                mStack[mStackSize - 1] = NONEMPTY_DOCUMENT;
+                return mPeeked = peekValue();
+            case NONEMPTY_DOCUMENT:
+                if (nextNonWhitespace(false) != -1) {
+                    throw syntaxError("Expected end of document");
+                }
+                return mPeeked = Token.END_DOCUMENT;
+            case EMPTY_ARRAY:
+                mStack[mStackSize - 1] = NONEMPTY_ARRAY;
+                if (nextNonWhitespace(true) == ']') {
+                    return mPeeked = Token.END_ARRAY;
+                }
+                mPos--;
+                return mPeeked = peekValue();
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace(true);
+                if (c == ']') {
+                    return mPeeked = Token.END_ARRAY;
+                } else if (c != ',') {
+                    throw syntaxError("Expected , or ]");
+                }
+                return mPeeked = peekValue();
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                boolean empty = mStack[mStackSize - 1] == EMPTY_OBJECT;
+                mStack[mStackSize - 1] = DANGLING_NAME;
+                c = nextNonWhitespace(true);
+                if (c == '}') {
+                    return mPeeked = Token.END_OBJECT;
+                }
+                if (!empty) {
+                    if (c != ',') {
+                        throw syntaxError("Expected , or }");
+                    }
+                    c = nextNonWhitespace(true);
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                return mPeeked = Token.NAME;
+            case DANGLING_NAME:
+                mStack[mStackSize - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace(true) != ':') {
+                    throw syntaxError("Expected :");
+                }
+                return mPeeked = peekValue();
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private Token peekValue() throws IOException {
+        int c = nextNonWhitespace(true);
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                mPos--;
+                return Token.BOOLEAN;
+            case 'n':
+                mPos--;
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    mPos--;
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Expected a value");
+        }
+    }
+
+    boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        mStackSize--;
+    }
+
+    void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        mStackSize--;
+    }
+
+    /**
+     * Checks that nothing but whitespace follows the top-level value.
+     */
+    void endDocument() throws IOException {
+        expect(Token.END_DOCUMENT);
+    }
+
+    String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * Reads a string, or a number as it was written.
+     */
+    String nextString() throws IOException {
+        Token token = peek();
+        mPeeked = null;
+        if (token == Token.STRING) {
+            return readString();
+        } else if (token == Token.NUMBER) {
+            return readNumber();
+        }
+        throw syntaxError("Expected a string but was " + token);
+    }
+
+    /**
+     * Reads a number, or a string holding one.
+     */
+    double nextDouble() throws IOException {
+        return parseDouble(nextNumberText());
+    }
+
+    /**
+     * Reads an integer, or a string holding one.
+     */
+    int nextInt() throws IOException {
+        String number = nextNumberText();
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            // e.g. 2.0 or 1e3
+            double value = parseDouble(number);
+            if ((int) value != value) {
+                throw syntaxError("Expected an int but was " + number);
+            }
+            return (int) value;
+        }
+    }
+
+    private double parseDouble(String number) {
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number but was " + number);
+        }
+    }
+
+    private String nextNumberText() throws IOException {
+        Token token = peek();
+        if (token != Token.NUMBER && token != Token.STRING) {
+            throw syntaxError("Expected a number but was " + token);
+        }
+        mPeeked = null;
+        return token == Token.NUMBER ? readNumber() : readString();
+    }
+
+    boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        String literal = readLiteral();
+        if ("true".equals(literal)) {
+            return true;
+        } else if ("false".equals(literal)) {
+            return false;
+        }
+        throw syntaxError("Expected a boolean but was " + literal);
+    }
+
+    void nextNull() throws IOException {
+        expect(Token.NULL);
+        if (!"null".equals(readLiteral())) {
+            throw syntaxError("Expected null");
+        }
+    }
+
+    /**
+     * Skips the next value, including everything nested in it.
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case BOOLEAN:
+                case NULL:
+                    mPeeked = null;
+                    readLiteral();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("No value to skip");
+                default:
+                    nextString();
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    void close() throws IOException {
+        mIn.close();
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        mPeeked = null;
+    }
+
+    private void push(int scope) {
+        if (mStackSize == mStack.length) {
+            int[] stack = new int[mStackSize * 2];
+            System.arraycopy(mStack, 0, stack, 0, mStackSize);
+            mStack = stack;
+        }
+        mStack[mStackSize++] = scope;
+    }
+
+    /**
+     * @return the next character that isn't whitespace, or -1 at the end of the input if
+     * {@code required} is false
+     */
+    private int nextNonWhitespace(boolean required) throws IOException {
+        while (mPos < mLimit || fill()) {
+            char c = mBuffer[mPos++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+        if (required) {
+            throw new EOFException("Unexpected end of JSON");
+        }
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        mPos = 0;
+        mLimit = 0;
+        int read = mIn.read(mBuffer, 0, mBuffer.length);
+        if (read > 0) {
+            mLimit = read;
+            return true;
+        }
+        return false;
+    }
+
+    private char nextChar() throws IOException {
+        if (mPos < mLimit || fill()) {
+            return mBuffer[mPos++];
+        }
+        throw new EOFException("Unexpected end of JSON");
+    }
+
+    /**
+     * Reads the rest of a string whose opening quote has been consumed.
+     */
+    private String readString() throws IOException {
+        StringBuilder text = mText;
+        text.setLength(0);
+        while (true) {
+            // copy runs without escapes in one go
+            int start = mPos;
+            while (mPos < mLimit) {
+                char c = mBuffer[mPos];
+                if (c == '"' || c == '\\') {
+                    break;
+                }
+                mPos++;
+            }
+            text.append(mBuffer, start, mPos - start);
+            if (mPos == mLimit) {
+                if (!fill()) {
+                    throw new EOFException("Unterminated string");
+                }
+                continue;
+            }
+            if (mBuffer[mPos++] == '"') {
+                return text.toString();
+            }
+            text.append(readEscape());
+        }
+    }
+
+    private char readEscape() throws IOException {
+        char c = nextChar();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(nextChar(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Bad \\u escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Bad escape \\" + c);
+        }
+    }
+
+    private String readNumber() throws IOException {
+        return readWhile(true);
+    }
+
+    private String readLiteral() throws IOException {
+        return readWhile(false);
+    }
+
+    /**
+     * Reads the characters of a number or a bare word.
+     */
+    private String readWhile(boolean number) throws IOException {
+        StringBuilder text = mText;
+        text.setLength(0);
+        while (mPos < mLimit || fill()) {
+            char c = mBuffer[mPos];
+            boolean accept = number
+                    ? (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E'
+                    : c >= 'a' && c <= 'z';
+            if (!accept) {
+                break;
+            }
+            text.append(c);
+            mPos++;
+        }
+        return text.toString();
+    }
+
+    private IllegalArgumentException syntaxError(String message) {
+        return new IllegalArgumentException(message + " at depth " + mStackSize);
+    }
+}
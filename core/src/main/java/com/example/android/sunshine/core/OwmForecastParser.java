@@ -0,0 +1,226 @@
+package com.example.android.sunshine.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+
+/**
+ * Streams an OpenWeatherMap daily forecast response, handing over each day as it's read.
+ * <p/>
+ * The response is never held in memory as a whole, neither as text nor as a tree: values go
+ * from the stream into one reusable {@link Day}, which the {@link Handler} copies out of
+ * before the next day overwrites it. Fields that Sunshine doesn't store are skipped.
+ */
+public class OwmForecastParser {
+
+    public interface Handler {
+        void onCity(String name, double latitude, double longitude);
+
+        /**
+         * @param index the day's position in the forecast, 0 for the first
+         * @param day   only valid during the call
+         */
+        void onDay(int index, Day day);
+    }
+
+    /**
+     * One day of the forecast.
+     */
+    public static class Day {
+        public double pressure;
+        public int humidity;
+        public double windSpeed;
+        public double windDirection;
+        public double high;
+        public double low;
+        public String description;
+        public int weatherId;
+
+        private int mFields;
+
+        private void reset() {
+            pressure = 0;
+            humidity = 0;
+            windSpeed = 0;
+            windDirection = 0;
+            high = 0;
+            low = 0;
+            description = null;
+            weatherId = 0;
+            mFields = 0;
+        }
+    }
+
+    // The fields a day can't do without
+    private static final int FIELD_HIGH = 1;
+    private static final int FIELD_LOW = 1 << 1;
+    private static final int FIELD_WEATHER_ID = 1 << 2;
+    private static final int FIELD_DESCRIPTION = 1 << 3;
+    private static final int REQUIRED_FIELDS = FIELD_HIGH | FIELD_LOW | FIELD_WEATHER_ID | FIELD_DESCRIPTION;
+
+    private final JsonPullReader mReader;
+    private final Handler mHandler;
+    private final Day mDay = new Day();
+
+    private OwmForecastParser(Reader in, Handler handler) {
+        mReader = new JsonPullReader(in);
+        mHandler = handler;
+    }
+
+    /**
+     * Reads a whole response from {@code in} and closes it.
+     *
+     * @return the response code, {@link HttpURLConnection#HTTP_OK} unless the response says
+     * otherwise, in which case it may have no forecast
+     * @throws IllegalArgumentException if the response isn't a forecast
+     */
+    public static int parse(Reader in, Handler handler) throws IOException {
+        OwmForecastParser parser = new OwmForecastParser(in, handler);
+        try {
+            return parser.readResponse();
+        } finally {
+            parser.mReader.close();
+        }
+    }
+
+    private int readResponse() throws IOException {
+        JsonPullReader reader = mReader;
+        int code = HttpURLConnection.HTTP_OK;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("cod".equals(name)) {
+                // a string in some responses, a number in others
+                code = reader.nextInt();
+            } else if ("city".equals(name)) {
+                readCity();
+            } else if ("list".equals(name)) {
+                readDays();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        reader.endDocument();
+        return code;
+    }
+
+    private void readCity() throws IOException {
+        JsonPullReader reader = mReader;
+        String cityName = null;
+        double latitude = 0;
+        double longitude = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("name".equals(name)) {
+                cityName = reader.nextString();
+            } else if ("coord".equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coord = reader.nextName();
+                    if ("lat".equals(coord)) {
+                        latitude = reader.nextDouble();
+                    } else if ("lon".equals(coord)) {
+                        longitude = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (cityName == null) {
+            throw new IllegalArgumentException("City without a name");
+        }
+        mHandler.onCity(cityName, latitude, longitude);
+    }
+
+    private void readDays() throws IOException {
+        JsonPullReader reader = mReader;
+        reader.beginArray();
+        for (int index = 0; reader.hasNext(); index++) {
+            Day day = mDay;
+            day.reset();
+            readDay(day);
+            if ((day.mFields & REQUIRED_FIELDS) != REQUIRED_FIELDS) {
+                throw new IllegalArgumentException("Incomplete forecast for day " + index);
+            }
+            mHandler.onDay(index, day);
+        }
+        reader.endArray();
+    }
+
+    private void readDay(Day day) throws IOException {
+        JsonPullReader reader = mReader;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("pressure".equals(name)) {
+                day.pressure = reader.nextDouble();
+            } else if ("humidity".equals(name)) {
+                day.humidity = reader.nextInt();
+            } else if ("speed".equals(name)) {
+                day.windSpeed = reader.nextDouble();
+            } else if ("deg".equals(name)) {
+                day.windDirection = reader.nextDouble();
+            } else if ("temp".equals(name)) {
+                readTemperatures(day);
+            } else if ("weather".equals(name)) {
+                readWeather(day);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readTemperatures(Day day) throws IOException {
+        JsonPullReader reader = mReader;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("max".equals(name)) {
+                day.high = reader.nextDouble();
+                day.mFields |= FIELD_HIGH;
+            } else if ("min".equals(name)) {
+                day.low = reader.nextDouble();
+                day.mFields |= FIELD_LOW;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads the first element of the "weather" array, which only ever has one.
+     */
+    private void readWeather(Day day) throws IOException {
+        JsonPullReader reader = mReader;
+        reader.beginArray();
+        if (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("id".equals(name)) {
+                    day.weatherId = reader.nextInt();
+                    day.mFields |= FIELD_WEATHER_ID;
+                } else if ("main".equals(name)) {
+                    day.description = reader.nextString();
+                    day.mFields |= FIELD_DESCRIPTION;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.android.sunshine.core;
+
+/**
+ * The Data Layer item the phone puts for the watch face, and the messages the watch can use to
+ * ask for it.
+ */
+public class WearableData {
+
+    public static final String PATH_WEATHER = "/weather-data";
+
+    /**
+     * A {@link WeatherRequestProtocol} request from the watch for the phone's weather.
+     */
+    public static final String PATH_WEATHER_REQUEST = "/weather-request";
+
+    /**
+     * The phone's {@link WeatherRequestProtocol} response.
+     */
+    public static final String PATH_WEATHER_RESPONSE = "/weather-response";
+
+    /**
+     * Today's high and low temperatures, formatted on the phone.
+     */
+    public static final String KEY_HIGH_TEMP = "high-temp";
+    public static final String KEY_LOW_TEMP = "low-temp";
+
+    /**
+     * Today's OpenWeatherMap condition id.
+     */
+    public static final String KEY_WEATHER_ID = "weather-id";
+
+    /**
+     * Whether the user sees temperatures in Celsius.
+     */
+    public static final String KEY_METRIC = "metric";
+
+    /**
+     * The forecast from today on, as a {@link ForecastCodec} record.
+     */
+    public static final String KEY_FORECAST = "forecast";
+
+    /**
+     * Custom art for today's condition, only sent when the user picked an art pack.
+     */
+    public static final String KEY_ICON = "icon";
+
+    /**
+     * The digest of the custom art, in place of the asset in a weather response, which can't
+     * carry assets. The asset itself is in the Data Layer.
+     */
+    public static final String KEY_ICON_DIGEST = "icon-digest";
+
+    /**
+     * Moves on whenever anything else in the item changes.
+     */
+    public static final String KEY_VERSION = "version";
+
+    private WearableData() {
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.android.sunshine.core;
+
+/**
+ * The kinds of weather Sunshine has icons and art for.
+ */
+public enum WeatherCondition {
+    STORM("storm"),
+    LIGHT_RAIN("light_rain"),
+    RAIN("rain"),
+    SNOW("snow"),
+    FOG("fog"),
+    CLEAR("clear"),
+    LIGHT_CLOUDS("light_clouds"),
+    CLOUDS("clouds");
+
+    /**
+     * Name of the condition's image in an art pack.
+     */
+    public final String artName;
+
+    WeatherCondition(String artName) {
+        this.artName = artName;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the condition for the id, or null if no relation is found
+     */
+    public static WeatherCondition fromWeatherId(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return RAIN;
+        } else if (weatherId == 511) {
+            return SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return FOG;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return STORM;
+        } else if (weatherId == 800) {
+            return CLEAR;
+        } else if (weatherId == 801) {
+            return LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return CLOUDS;
+        }
+        return null;
+    }
+}
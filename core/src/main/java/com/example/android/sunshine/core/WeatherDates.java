@@ -0,0 +1,54 @@
+package com.example.android.sunshine.core;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Days as the weather table stores them. A forecast day is identified by its Julian day
+ * number, and stored as the time its day starts in the device's time zone.
+ */
+public class WeatherDates {
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000;
+
+    // Julian day number of 1970-01-01
+    private static final int EPOCH_JULIAN_DAY = 2440588;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private WeatherDates() {
+    }
+
+    /**
+     * @return the Julian day number of the day {@code timeMs} falls on in {@code timeZone}
+     */
+    public static int getJulianDay(long timeMs, TimeZone timeZone) {
+        long localMs = timeMs + timeZone.getOffset(timeMs);
+        // floor, so times before the epoch land on the right day
+        long day = localMs / DAY_MS;
+        if (localMs < 0 && localMs % DAY_MS != 0) {
+            day--;
+        }
+        return (int) day + EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * @return the time {@code julianDay} starts in {@code timeZone}
+     */
+    public static long getStartOfJulianDay(int julianDay, TimeZone timeZone) {
+        Calendar utc = Calendar.getInstance(UTC);
+        utc.setTimeInMillis((julianDay - EPOCH_JULIAN_DAY) * DAY_MS);
+
+        Calendar local = Calendar.getInstance(timeZone);
+        local.clear();
+        local.set(utc.get(Calendar.YEAR), utc.get(Calendar.MONTH), utc.get(Calendar.DAY_OF_MONTH));
+        return local.getTimeInMillis();
+    }
+
+    /**
+     * Normalizes a time to the start of its day in {@code timeZone}.
+     */
+    public static long normalizeDate(long timeMs, TimeZone timeZone) {
+        return getStartOfJulianDay(getJulianDay(timeMs, timeZone), timeZone);
+    }
+}
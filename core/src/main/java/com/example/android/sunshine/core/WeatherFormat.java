@@ -0,0 +1,29 @@
+package com.example.android.sunshine.core;
+
+import java.util.Locale;
+
+/**
+ * Formatting shared by the phone and the watch. Temperatures are stored in Celsius and only
+ * converted for display.
+ */
+public class WeatherFormat {
+
+    private WeatherFormat() {
+    }
+
+    /**
+     * @return {@code celsius} in the units the user prefers
+     */
+    public static double toDisplayUnits(double celsius, boolean metric) {
+        return metric ? celsius : (celsius * 1.8) + 32;
+    }
+
+    /**
+     * @param format the app's {@code format_temperature} string, which takes the temperature as
+     *               a double
+     * @return {@code celsius} in the units the user prefers, formatted with {@code format}
+     */
+    public static String formatTemperature(String format, double celsius, boolean metric) {
+        return String.format(Locale.getDefault(), format, toDisplayUnits(celsius, metric));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.android.sunshine.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers the watch's weather requests on the phone from the last weather it sent.
+ * <p/>
+ * The snapshot is the weather item and its version, kept in memory with the response already
+ * encoded, so a request costs a version comparison and a send: a watch that's up to date gets
+ * {@link WeatherRequestProtocol#STATUS_NOT_MODIFIED}, any other gets the snapshot. Only when
+ * there is no snapshot, or it's older than the maximum age, is the {@link Source} asked for
+ * one, a stale snapshot at most once per maximum age; the weather it brings reaches the watch
+ * through the Data Layer like any other update.
+ * <p/>
+ * Safe to use from any thread.
+ */
+public class WeatherRequestHandler {
+
+    public interface Transport {
+        /**
+         * Sends {@code response} to the node that made a request. Must not block.
+         */
+        void reply(String nodeId, byte[] response);
+    }
+
+    public interface Source {
+        /**
+         * Asks for a snapshot newer than the current one, if any. Must not block.
+         */
+        void requestSnapshot(boolean stale);
+    }
+
+    private static final byte[] NOT_MODIFIED = WeatherRequestProtocol.encodeNotModified();
+
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private static class Snapshot {
+        final long version;
+        final long timeMs;
+        final byte[] response;
+
+        Snapshot(long version, long timeMs, byte[] response) {
+            this.version = version;
+            this.timeMs = timeMs;
+            this.response = response;
+        }
+    }
+
+    private final Transport mTransport;
+    private final Source mSource;
+    private final long mMaxAgeMs;
+
+    private volatile Snapshot mSnapshot;
+    private final AtomicLong mLastSnapshotRequestMs = new AtomicLong(NEVER);
+
+    /**
+     * @param maxAgeMs how old a snapshot can get before a request also asks for a newer one
+     */
+    public WeatherRequestHandler(Transport transport, Source source, long maxAgeMs) {
+        mTransport = transport;
+        mSource = source;
+        mMaxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Replaces the snapshot with the weather that was just sent.
+     *
+     * @param timeMs when the weather was current
+     */
+    public void setSnapshot(long version, byte[] payload, long timeMs) {
+        mSnapshot = new Snapshot(version, timeMs, WeatherRequestProtocol.encodeModified(payload));
+    }
+
+    /**
+     * Records that the weather was found unchanged at {@code timeMs}, so the snapshot is as
+     * current as if it had just been set.
+     */
+    public void confirmSnapshot(long timeMs) {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot != null && timeMs > snapshot.timeMs) {
+            mSnapshot = new Snapshot(snapshot.version, timeMs, snapshot.response);
+        }
+    }
+
+    /**
+     * Answers a request from {@code nodeId}. Malformed requests are ignored.
+     *
+     * @return whether the request could be answered right away
+     */
+    public boolean handleRequest(String nodeId, byte[] request, long nowMs) {
+        long version;
+        try {
+            version = WeatherRequestProtocol.decodeRequest(request);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            mSource.requestSnapshot(false);
+            return false;
+        }
+        if (nowMs - snapshot.timeMs > mMaxAgeMs) {
+            // answer with what we have meanwhile
+            requestStaleSnapshot(nowMs);
+        }
+        mTransport.reply(nodeId, version == snapshot.version ? NOT_MODIFIED : snapshot.response);
+        return true;
+    }
+
+    /**
+     * Asks for a newer snapshot unless that was done within the maximum age, as getting one
+     * means going to the network.
+     */
+    private void requestStaleSnapshot(long nowMs) {
+        long last = mLastSnapshotRequestMs.get();
+        if (last != NEVER && nowMs - last < mMaxAgeMs) {
+            return;
+        }
+        if (mLastSnapshotRequestMs.compareAndSet(last, nowMs)) {
+            mSource.requestSnapshot(true);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.android.sunshine.core;
+
+/**
+ * Messages the watch and the phone exchange when the watch asks for the weather.
+ * <p/>
+ * A request is the version of the weather the watch shows, as an 8-byte big-endian long, or 0
+ * if it has none. A response is a status byte, followed for {@link #STATUS_MODIFIED} by the
+ * phone's current weather item as an opaque payload.
+ */
+public class WeatherRequestProtocol {
+
+    public static final int REQUEST_SIZE = 8;
+
+    /**
+     * The watch already shows the phone's weather.
+     */
+    public static final int STATUS_NOT_MODIFIED = 0;
+
+    /**
+     * The payload is newer weather.
+     */
+    public static final int STATUS_MODIFIED = 1;
+
+    private WeatherRequestProtocol() {
+    }
+
+    public static byte[] encodeRequest(long version) {
+        byte[] request = new byte[REQUEST_SIZE];
+        for (int i = REQUEST_SIZE - 1; i >= 0; i--) {
+            request[i] = (byte) version;
+            version >>>= 8;
+        }
+        return request;
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code request} isn't a request
+     */
+    public static long decodeRequest(byte[] request) {
+        if (request == null || request.length != REQUEST_SIZE) {
+            throw new IllegalArgumentException("Not a weather request");
+        }
+        long version = 0;
+        for (int i = 0; i < REQUEST_SIZE; i++) {
+            version = (version << 8) | (request[i] & 0xff);
+        }
+        return version;
+    }
+
+    public static byte[] encodeNotModified() {
+        return new byte[]{STATUS_NOT_MODIFIED};
+    }
+
+    public static byte[] encodeModified(byte[] payload) {
+        byte[] response = new byte[1 + payload.length];
+        response[0] = STATUS_MODIFIED;
+        System.arraycopy(payload, 0, response, 1, payload.length);
+        return response;
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code response} is empty or has an unknown status
+     */
+    public static int getStatus(byte[] response) {
+        if (response == null || response.length == 0) {
+            throw new IllegalArgumentException("Empty weather response");
+        }
+        int status = response[0];
+        if (status != STATUS_NOT_MODIFIED && status != STATUS_MODIFIED) {
+            throw new IllegalArgumentException("Unknown weather response status " + status);
+        }
+        return status;
+    }
+
+    /**
+     * @return the payload of a {@link #STATUS_MODIFIED} response
+     */
+    public static byte[] getPayload(byte[] response) {
+        byte[] payload = new byte[response.length - 1];
+        System.arraycopy(response, 1, payload, 0, payload.length);
+        return payload;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Fans a snapshot out to stand-ins for what runs after a sync: a few quick consumers and one
+    that blocks on a download, as the notification does for its icon. Checks that the snapshot
+    is read once, and that a slow, failing or stuck consumer doesn't hold up the caller or the
+    other consumers. Slow work is held on latches rather than timed, so nothing depends on how
+    fast the machine is.
+ */
+public class TestFanOut {
+
+    private static final long TIMEOUT_MS = 2000;
+    private static final long STUCK_TIMEOUT_MS = 100;
+    private static final int THREADS = 3;
+
+    private static class StandInConsumer implements FanOut.Consumer<String> {
+        final String name;
+        final long timeoutMs;
+        // what the consumer blocks on, as for a download; null for a quick consumer
+        final CountDownLatch release;
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        volatile String snapshot;
+        volatile RuntimeException failure;
+
+        StandInConsumer(String name, long timeoutMs, CountDownLatch release) {
+            this.name = name;
+            this.timeoutMs = timeoutMs;
+            this.release = release;
+        }
+
+        StandInConsumer(String name) {
+            this(name, TIMEOUT_MS, null);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        @Override
+        public void accept(String snapshot) throws Exception {
+            this.snapshot = snapshot;
+            runs.incrementAndGet();
+            if (failure != null) {
+                throw failure;
+            }
+            try {
+                if (release != null) {
+                    release.await();
+                }
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            done.countDown();
+        }
+    }
+
+    private static class CountingReader implements Callable<String> {
+        final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public String call() {
+            reads.incrementAndGet();
+            return "today";
+        }
+    }
+
+    private static class QueueListener implements FanOut.Listener {
+        final BlockingQueue<String> summaries = new ArrayBlockingQueue<>(16);
+
+        @Override
+        public void onFanOutComplete(String summary) {
+            summaries.add(summary);
+        }
+
+        String take() throws InterruptedException {
+            String summary = summaries.poll(TIMEOUT_MS * 2, TimeUnit.MILLISECONDS);
+            assertNotNull(summary);
+            return summary;
+        }
+    }
+
+    private static boolean await(CountDownLatch latch) throws InterruptedException {
+        return latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void everyConsumerGetsOneSnapshot() throws Exception {
+        List<StandInConsumer> consumers = Arrays.asList(
+                new StandInConsumer("widgets"),
+                new StandInConsumer("muzei"),
+                new StandInConsumer("notification"),
+                new StandInConsumer("wearables"));
+        QueueListener listener = new QueueListener();
+        FanOut<String> fanOut = new FanOut<String>(new ArrayList<FanOut.Consumer<String>>(consumers),
+                THREADS, listener);
+        CountingReader reader = new CountingReader();
+
+        fanOut.dispatch(reader);
+        String summary = listener.take();
+
+        assertEquals(1, reader.reads.get());
+        for (StandInConsumer consumer : consumers) {
+            assertEquals(1, consumer.runs.get());
+            assertEquals("today", consumer.snapshot);
+            assertTrue(summary.contains(consumer.name + " "));
+        }
+        assertTrue(fanOut.toLogLines().contains("notification: 1 runs"));
+    }
+
+    @Test
+    public void dispatchDoesNotWait() throws Exception {
+        final CountDownLatch read = new CountDownLatch(1);
+        final CountDownLatch readDone = new CountDownLatch(1);
+        QueueListener listener = new QueueListener();
+        FanOut<String> fanOut = new FanOut<String>(Arrays.<FanOut.Consumer<String>>asList(
+                new StandInConsumer("notification")), THREADS, listener);
+
+        fanOut.dispatch(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                // bounded, so a dispatch that waits fails below rather than hanging
+                await(read);
+                readDone.countDown();
+                return "today";
+            }
+        });
+
+        assertEquals("dispatch waited for the reader", 1, readDone.getCount());
+        read.countDown();
+        listener.take();
+    }
+
+    @Test
+    public void slowConsumerDoesNotHoldUpOthers() throws Exception {
+        CountDownLatch download = new CountDownLatch(1);
+        StandInConsumer notification = new StandInConsumer("notification", TIMEOUT_MS, download);
+        List<StandInConsumer> quick = Arrays.asList(
+                new StandInConsumer("widgets"),
+                new StandInConsumer("muzei"),
+                new StandInConsumer("wearables"));
+        List<FanOut.Consumer<String>> consumers = new ArrayList<>();
+        consumers.add(notification);
+        consumers.addAll(quick);
+        QueueListener listener = new QueueListener();
+        FanOut<String> fanOut = new FanOut<String>(consumers, THREADS, listener);
+
+        fanOut.dispatch(new CountingReader());
+        for (StandInConsumer consumer : quick) {
+            assertTrue(consumer.name + " waited for the download", await(consumer.done));
+        }
+        assertEquals(1, notification.done.getCount());
+
+        download.countDown();
+        String summary = listener.take();
+        assertTrue(await(notification.done));
+        assertTrue(summary.contains("notification "));
+    }
+
+    @Test
+    public void stuckConsumerTimesOut() throws Exception {
+        StandInConsumer quick = new StandInConsumer("widgets");
+        // never released
+        StandInConsumer stuck = new StandInConsumer("notification", STUCK_TIMEOUT_MS,
+                new CountDownLatch(1));
+        QueueListener listener = new QueueListener();
+        FanOut<String> fanOut = new FanOut<String>(Arrays.<FanOut.Consumer<String>>asList(stuck, quick),
+                THREADS, listener);
+
+        fanOut.dispatch(new CountingReader());
+        String summary = listener.take();
+
+        assertTrue(summary.contains("notification timed out"));
+        assertEquals(1, quick.runs.get());
+        assertTrue("stuck consumer wasn't interrupted", await(stuck.interrupted));
+        assertTrue(fanOut.toLogLines().contains("notification: 0 runs, 0ms mean, 0ms max, 1 timeouts"));
+    }
+
+    @Test
+    public void failingConsumerDoesNotStopOthers() throws Exception {
+        StandInConsumer failing = new StandInConsumer("muzei");
+        failing.failure = new IllegalStateException("no wallpaper");
+        StandInConsumer quick = new StandInConsumer("widgets");
+        QueueListener listener = new QueueListener();
+        FanOut<String> fanOut = new FanOut<String>(Arrays.<FanOut.Consumer<String>>asList(failing, quick),
+                THREADS, listener);
+
+        fanOut.dispatch(new Callable<String>() {
+            @Override
+            public String call() {
+                throw new IllegalStateException("no row");
+            }
+        });
+        String summary = listener.take();
+
+        assertTrue(summary.contains("muzei failed"));
+        assertEquals(1, quick.runs.get());
+        // a failed read hands out no snapshot
+        assertNull(quick.snapshot);
+        assertTrue(fanOut.toLogLines().contains("muzei: 0 runs, 0ms mean, 0ms max, 0 timeouts, 1 failures"));
+    }
+}
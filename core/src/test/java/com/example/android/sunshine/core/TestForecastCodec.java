@@ -0,0 +1,92 @@
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestForecastCodec {
+
+    private static final int FIRST_DAY = 2457400;
+
+    private static List<ForecastDay> createForecast(int days) {
+        List<ForecastDay> forecast = new ArrayList<>();
+        for (int i = 0; i < days; i++) {
+            forecast.add(new ForecastDay(FIRST_DAY + i, 800 + i % 5,
+                    -12.34 + i * 3.1, 25.68 + i, 40 + i * 4, 1.23 * i, i * 25));
+        }
+        return forecast;
+    }
+
+    private static void assertDayEquals(ForecastDay expected, ForecastDay actual) {
+        assertEquals(expected.julianDay, actual.julianDay);
+        assertEquals(expected.weatherId, actual.weatherId);
+        // temperatures and wind speed are sent in tenths, the rest in whole units
+        assertEquals(expected.minTemp, actual.minTemp, 0.05);
+        assertEquals(expected.maxTemp, actual.maxTemp, 0.05);
+        assertEquals(expected.humidity, actual.humidity, 0.5);
+        assertEquals(expected.windSpeed, actual.windSpeed, 0.05);
+        assertEquals(expected.windDirection, actual.windDirection, 0.5);
+    }
+
+    @Test
+    public void roundTripsTwoWeeks() {
+        List<ForecastDay> forecast = createForecast(14);
+        byte[] record = ForecastCodec.encode(forecast);
+        List<ForecastDay> decoded = ForecastCodec.decode(record);
+
+        assertEquals(forecast.size(), decoded.size());
+        for (int i = 0; i < forecast.size(); i++) {
+            assertDayEquals(forecast.get(i), decoded.get(i));
+        }
+        assertTrue("Record too big: " + record.length + " bytes", record.length < 200);
+    }
+
+    @Test
+    public void roundTripsGapsAndExtremes() {
+        List<ForecastDay> forecast = Arrays.asList(
+                new ForecastDay(FIRST_DAY, 200, -89.2, 56.7, 0, 0, 0),
+                new ForecastDay(FIRST_DAY - 3, 781, -0.04, 0.04, 100, 113.2, 359),
+                new ForecastDay(FIRST_DAY + 400, 0, 0, 0, 50, 0, 180));
+        List<ForecastDay> decoded = ForecastCodec.decode(ForecastCodec.encode(forecast));
+
+        assertEquals(forecast.size(), decoded.size());
+        for (int i = 0; i < forecast.size(); i++) {
+            assertDayEquals(forecast.get(i), decoded.get(i));
+        }
+    }
+
+    @Test
+    public void roundTripsEmptyForecast() {
+        List<ForecastDay> decoded = ForecastCodec.decode(
+                ForecastCodec.encode(Collections.<ForecastDay>emptyList()));
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test
+    public void rejectsUnknownVersion() {
+        byte[] record = ForecastCodec.encode(createForecast(2));
+        record[0] = ForecastCodec.VERSION + 1;
+        try {
+            ForecastCodec.decode(record);
+            fail("Decoded a record of an unknown version");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedRecord() {
+        byte[] record = ForecastCodec.encode(createForecast(14));
+        try {
+            ForecastCodec.decode(Arrays.copyOf(record, record.length - 1));
+            fail("Decoded a truncated record");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.android.sunshine.core;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import static com.example.android.sunshine.core.TestUtilities.readResource;
+import static com.example.android.sunshine.core.TestUtilities.writeReport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+    Fetches hand-written responses in OpenWeatherMap's daily forecast format from a local
+    stand-in server that honours If-None-Match, If-Modified-Since and gzip, and counts the body
+    bytes it sends. Checks what is cached and when requests are conditional, then writes what a
+    day of syncs transfers to build/reports/benchmarks/TestForecastFetcher and fails if that is
+    not less than a tenth of fetching the whole forecast uncompressed every time.
+ */
+public class TestForecastFetcher {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String LOCATION = "94043";
+    private static final String ETAG = "\"a1\"";
+    private static final String LAST_MODIFIED = "Sun, 13 Dec 2015 09:00:00 GMT";
+
+    // A sync every 3 hours, with the forecast changing twice a day
+    private static final int SYNCS_PER_DAY = 8;
+    private static final int CHANGES_PER_DAY = 2;
+
+    /**
+     * Serves one response, the way OpenWeatherMap would.
+     */
+    private static class StandInServer implements HttpHandler {
+        byte[] body;
+        int code = HttpURLConnection.HTTP_OK;
+        String etag = ETAG;
+        String lastModified = LAST_MODIFIED;
+        boolean gzip = true;
+
+        int requests;
+        long bytesServed;
+        String ifNoneMatch;
+        String ifModifiedSince;
+
+        @Override
+        public synchronized void handle(HttpExchange exchange) throws IOException {
+            requests++;
+            Headers request = exchange.getRequestHeaders();
+            ifNoneMatch = request.getFirst("If-None-Match");
+            ifModifiedSince = request.getFirst("If-Modified-Since");
+
+            Headers response = exchange.getResponseHeaders();
+            if (etag != null) {
+                response.set("ETag", etag);
+            }
+            if (lastModified != null) {
+                response.set("Last-Modified", lastModified);
+            }
+            boolean notModified = etag != null
+                    ? etag.equals(ifNoneMatch)
+                    : lastModified != null && lastModified.equals(ifModifiedSince);
+            if (code == HttpURLConnection.HTTP_OK && notModified) {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] sent = body;
+            String acceptEncoding = request.getFirst("Accept-Encoding");
+            if (gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                sent = gzip(body);
+                response.set("Content-Encoding", "gzip");
+            }
+            response.set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(code, sent.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(sent);
+            out.close();
+            bytesServed += sent.length;
+        }
+    }
+
+    private StandInServer mStandIn;
+    private HttpServer mServer;
+    private URL mUrl;
+    private File mDir;
+    private ForecastFetcher mFetcher;
+
+    private byte[] mForecast;
+
+    @Before
+    public void setUp() throws IOException {
+        mForecast = readResource("/owm/daily_14_mountain_view.json");
+        mStandIn = new StandInServer();
+        mStandIn.body = mForecast;
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/forecast", mStandIn);
+        mServer.start();
+        mUrl = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/forecast?q=" + LOCATION);
+        mDir = Files.createTempDirectory("forecast").toFile();
+        mFetcher = new ForecastFetcher(mDir);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void fetchesCompressedAndKeepsCopy() throws IOException {
+        ForecastFetcher.Response response = mFetcher.fetch(mUrl, LOCATION);
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, response.getCode());
+            assertFalse(response.isNotModified());
+            assertEquals(14, countDays(response.getReader()));
+            response.commit();
+            assertEquals(mStandIn.bytesServed, response.getTransferredBytes());
+        } finally {
+            response.close();
+        }
+        assertTrue(mStandIn.bytesServed < mForecast.length / 2);
+        assertNull(mStandIn.ifNoneMatch);
+        assertEquals(new String(mForecast, UTF_8), readAll(mFetcher.openCached(LOCATION)));
+    }
+
+    @Test
+    public void unchangedForecastIsNotSentAgain() throws IOException {
+        long fetchedMs = fetchAndCommit();
+        long bytesServed = mStandIn.bytesServed;
+
+        ForecastFetcher.Response response = mFetcher.fetch(mUrl, LOCATION);
+        try {
+            assertTrue(response.isNotModified());
+            assertNull(response.getReader());
+            assertEquals(fetchedMs, response.getFetchedMs());
+        } finally {
+            response.close();
+        }
+        assertEquals(ETAG, mStandIn.ifNoneMatch);
+        assertEquals(LAST_MODIFIED, mStandIn.ifModifiedSince);
+        assertEquals(bytesServed, mStandIn.bytesServed);
+    }
+
+    @Test
+    public void changedForecastIsFetchedAgain() throws IOException {
+        fetchAndCommit();
+        mStandIn.body = readResource("/owm/daily_16_sao_paulo.json");
+        mStandIn.etag = "\"a2\"";
+
+        ForecastFetcher.Response response = mFetcher.fetch(mUrl, LOCATION);
+        try {
+            assertEquals(16, countDays(response.getReader()));
+            response.commit();
+        } finally {
+            response.close();
+        }
+        assertEquals(16, countDays(mFetcher.openCached(LOCATION)));
+    }
+
+    @Test
+    public void usesLastModifiedWithoutEtag() throws IOException {
+        mStandIn.etag = null;
+        fetchAndCommit();
+
+        ForecastFetcher.Response response = mFetcher.fetch(mUrl, LOCATION);
+        response.close();
+        assertTrue(response.isNotModified());
+        assertNull(mStandIn.ifNoneMatch);
+        assertEquals(LAST_MODIFIED, mStandIn.ifModifiedSince);
+    }
+
+    @Test
+    public void compressesUncompressedResponses() throws IOException {
+        mStandIn.gzip = false;
+        fetchAndCommit();
+
+        assertEquals(mForecast.length, mStandIn.bytesServed);
+        assertEquals(new String(mForecast, UTF_8), readAll(mFetcher.openCached(LOCATION)));
+    }
+
+    @Test
+    public void uncommittedResponseIsNotKept() throws IOException {
+        ForecastFetcher.Response response = mFetcher.fetch(mUrl, LOCATION);
+        // as when the body doesn't parse
+        response.getReader().read();
+        response.close();
+
+        assertNull(mFetcher.openCached(LOCATION));
+        assertEquals(0, mDir.listFiles().length);
+        response = mFetcher.fetch(mUrl, LOCATION);
+        response.close();
+        assertFalse(response.isNotModified());
+        assertNull(mStandIn.ifNoneMatch);
+    }
+
+    @Test
+    public void otherUrlIsNotConditional() throws IOException {
+        fetchAndCommit();
+
+        ForecastFetcher.Response response = mFetcher.fetch(new URL(mUrl + "&cnt=7"), LOCATION);
+        response.close();
+        assertFalse(response.isNotModified());
+        assertNull(mStandIn.ifNoneMatch);
+    }
+
+    @Test
+    public void invalidatedForecastIsNotConditional() throws IOException {
+        fetchAndCommit();
+        mFetcher.invalidate(LOCATION);
+
+        assertNull(mFetcher.openCached(LOCATION));
+        ForecastFetcher.Response response = mFetcher.fetch(mUrl, LOCATION);
+        response.close();
+        assertFalse(response.isNotModified());
+    }
+
+    @Test
+    public void returnsErrorBody() throws IOException {
+        mStandIn.code = HttpURLConnection.HTTP_NOT_FOUND;
+        mStandIn.body = readResource("/owm/not_found.json");
+
+        ForecastFetcher.Response response = mFetcher.fetch(mUrl, LOCATION);
+        try {
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND, response.getCode());
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND, OwmForecastParser.parse(response.getReader(),
+                    new CountingHandler()));
+            try {
+                response.commit();
+                fail();
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            response.close();
+        }
+        assertNull(mFetcher.openCached(LOCATION));
+    }
+
+    @Test
+    public void measuresBytesOverDay() throws IOException {
+        int parses = 0;
+        for (int sync = 0; sync < SYNCS_PER_DAY; sync++) {
+            if (sync % (SYNCS_PER_DAY / CHANGES_PER_DAY) == 0) {
+                mStandIn.etag = "\"" + sync + "\"";
+            }
+            ForecastFetcher.Response response = mFetcher.fetch(mUrl, LOCATION);
+            try {
+                if (!response.isNotModified()) {
+                    countDays(response.getReader());
+                    response.commit();
+                    parses++;
+                }
+            } finally {
+                response.close();
+            }
+        }
+        long uncompressed = (long) SYNCS_PER_DAY * mForecast.length;
+        writeReport(TestForecastFetcher.class, "day", String.format(Locale.US,
+                "%d syncs: %d bytes conditional+gzip, %d bytes before, %d of %d parsed",
+                SYNCS_PER_DAY, mStandIn.bytesServed, uncompressed, parses, SYNCS_PER_DAY));
+        assertEquals(SYNCS_PER_DAY, mStandIn.requests);
+        assertEquals(CHANGES_PER_DAY, parses);
+        assertTrue("a day of syncs transfers a tenth or more of fetching uncompressed",
+                mStandIn.bytesServed * 10 < uncompressed);
+    }
+
+    private long fetchAndCommit() throws IOException {
+        ForecastFetcher.Response response = mFetcher.fetch(mUrl, LOCATION);
+        try {
+            countDays(response.getReader());
+            response.commit();
+            return response.getFetchedMs();
+        } finally {
+            response.close();
+        }
+    }
+
+    private static class CountingHandler implements OwmForecastParser.Handler {
+        int days;
+
+        @Override
+        public void onCity(String name, double latitude, double longitude) {
+        }
+
+        @Override
+        public void onDay(int index, OwmForecastParser.Day day) {
+            days++;
+        }
+    }
+
+    private static int countDays(Reader in) throws IOException {
+        CountingHandler handler = new CountingHandler();
+        assertEquals(HttpURLConnection.HTTP_OK, OwmForecastParser.parse(in, handler));
+        return handler.days;
+    }
+
+    private static String readAll(Reader in) throws IOException {
+        StringWriter out = new StringWriter();
+        char[] chunk = new char[4096];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            out.write(chunk, 0, read);
+        }
+        in.close();
+        return out.toString();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.android.sunshine.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.android.sunshine.core.TestUtilities.readResource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Syncs a user's worth of locations from a local stand-in server that takes a while to answer
+    each, as OpenWeatherMap does, and counts how many requests it has in flight. Checks each
+    location's result, and that the requests overlap without more connections open than
+    allowed.
+ */
+public class TestForecastSyncEngine {
+
+    private static final int LOCATIONS = 24;
+    private static final int THREADS = 6;
+    private static final int CONNECTIONS_PER_HOST = 4;
+    private static final long LATENCY_MS = 60;
+    private static final String UNKNOWN_LOCATION = "nowhere";
+
+    private static class StandInServer implements HttpHandler {
+        byte[] forecast;
+        byte[] notFound;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            int now = inFlight.incrementAndGet();
+            int max;
+            while ((max = maxInFlight.get()) < now && !maxInFlight.compareAndSet(max, now)) {
+                // retry
+            }
+            try {
+                Thread.sleep(LATENCY_MS);
+                boolean unknown = exchange.getRequestURI().getQuery().contains(UNKNOWN_LOCATION);
+                exchange.getResponseHeaders().set("ETag", "\"1\"");
+                if (!unknown && "\"1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                } else {
+                    byte[] body = unknown ? notFound : forecast;
+                    exchange.sendResponseHeaders(unknown ? HttpURLConnection.HTTP_NOT_FOUND
+                            : HttpURLConnection.HTTP_OK, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        }
+    }
+
+    private static class CountingHandler implements OwmForecastParser.Handler {
+        String city;
+        int days;
+
+        @Override
+        public void onCity(String name, double latitude, double longitude) {
+            city = name;
+        }
+
+        @Override
+        public void onDay(int index, OwmForecastParser.Day day) {
+            days++;
+        }
+    }
+
+    private static final ForecastSyncEngine.HandlerFactory<CountingHandler> FACTORY =
+            new ForecastSyncEngine.HandlerFactory<CountingHandler>() {
+                @Override
+                public CountingHandler create(String location) {
+                    return new CountingHandler();
+                }
+            };
+
+    private StandInServer mStandIn;
+    private HttpServer mServer;
+    private File mDir;
+    private ForecastFetcher mFetcher;
+    private ForecastSyncEngine mEngine;
+
+    @Before
+    public void setUp() throws IOException {
+        mStandIn = new StandInServer();
+        mStandIn.forecast = readResource("/owm/daily_14_mountain_view.json");
+        mStandIn.notFound = readResource("/owm/not_found.json");
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/forecast", mStandIn);
+        // so the server isn't what limits the requests in flight
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+        mDir = Files.createTempDirectory("forecast").toFile();
+        mFetcher = new ForecastFetcher(mDir);
+        mEngine = new ForecastSyncEngine(mFetcher, THREADS, CONNECTIONS_PER_HOST);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void syncsEveryLocation() throws Exception {
+        Map<String, URL> urls = createUrls(LOCATIONS);
+        urls.put(UNKNOWN_LOCATION, createUrl(UNKNOWN_LOCATION));
+
+        List<ForecastSyncEngine.Result<CountingHandler>> results = mEngine.syncAll(urls, FACTORY);
+        try {
+            assertEquals(LOCATIONS + 1, results.size());
+            for (int i = 0; i < LOCATIONS; i++) {
+                ForecastSyncEngine.Result<CountingHandler> result = results.get(i);
+                assertEquals("location" + i, result.location);
+                assertTrue(result.isOk());
+                assertEquals("Mountain View", result.handler.city);
+                assertEquals(14, result.handler.days);
+                assertTrue(result.getFetchNanos() >= TimeUnit.MILLISECONDS.toNanos(LATENCY_MS));
+            }
+            ForecastSyncEngine.Result<CountingHandler> unknown = results.get(LOCATIONS);
+            assertFalse(unknown.isOk());
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND, unknown.getCode());
+        } finally {
+            ForecastSyncEngine.closeAll(results);
+        }
+        assertTrue(mStandIn.maxInFlight.get() <= CONNECTIONS_PER_HOST);
+    }
+
+    @Test
+    public void committedLocationsAreNotModifiedNextTime() throws Exception {
+        Map<String, URL> urls = createUrls(LOCATIONS);
+        List<ForecastSyncEngine.Result<CountingHandler>> results = mEngine.syncAll(urls, FACTORY);
+        try {
+            // as if only the first half made it into the database
+            for (int i = 0; i < LOCATIONS / 2; i++) {
+                results.get(i).commit();
+            }
+        } finally {
+            ForecastSyncEngine.closeAll(results);
+        }
+
+        results = mEngine.syncAll(urls, FACTORY);
+        try {
+            for (int i = 0; i < LOCATIONS; i++) {
+                ForecastSyncEngine.Result<CountingHandler> result = results.get(i);
+                assertEquals(i < LOCATIONS / 2, result.isNotModified());
+                assertEquals(i < LOCATIONS / 2 ? 0 : 14, result.handler.days);
+            }
+        } finally {
+            ForecastSyncEngine.closeAll(results);
+        }
+    }
+
+    @Test
+    public void reportsConnectionFailures() throws Exception {
+        Map<String, URL> urls = new LinkedHashMap<>();
+        // nothing listens on the discard port
+        urls.put("unreachable", new URL("http://127.0.0.1:9/forecast?q=unreachable"));
+
+        List<ForecastSyncEngine.Result<CountingHandler>> results = mEngine.syncAll(urls, FACTORY);
+        try {
+            assertFalse(results.get(0).isOk());
+            assertTrue(results.get(0).getError() instanceof IOException);
+        } finally {
+            ForecastSyncEngine.closeAll(results);
+        }
+    }
+
+    @Test
+    public void fetchesLocationsConcurrently() throws Exception {
+        List<ForecastSyncEngine.Result<CountingHandler>> results =
+                mEngine.syncAll(createUrls(LOCATIONS), FACTORY);
+        try {
+            for (ForecastSyncEngine.Result<CountingHandler> result : results) {
+                assertTrue(result.isOk());
+            }
+        } finally {
+            ForecastSyncEngine.closeAll(results);
+        }
+
+        int maxInFlight = mStandIn.maxInFlight.get();
+        assertTrue("max in flight " + maxInFlight, maxInFlight > 1);
+        assertTrue("max in flight " + maxInFlight, maxInFlight <= CONNECTIONS_PER_HOST);
+    }
+
+    private Map<String, URL> createUrls(int count) throws IOException {
+        Map<String, URL> urls = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            urls.put("location" + i, createUrl("location" + i));
+        }
+        return urls;
+    }
+
+    private URL createUrl(String location) throws IOException {
+        return new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/forecast?q=" + location);
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.android.sunshine.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static com.example.android.sunshine.core.TestUtilities.getAllocatedBytes;
+import static com.example.android.sunshine.core.TestUtilities.readResource;
+import static com.example.android.sunshine.core.TestUtilities.writeReport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+    Checks the streaming forecast parser against hand-written responses in OpenWeatherMap's
+    daily forecast format, then benchmarks it against what the sync adapter used to do: read
+    the response line by line into a StringBuffer and walk a JSONObject tree. Writes ns/parse
+    and bytes allocated/parse for both to build/reports/benchmarks/TestOwmForecastParser, and
+    fails if streaming stops allocating less.
+ */
+public class TestOwmForecastParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String MOUNTAIN_VIEW = "/owm/daily_14_mountain_view.json";
+    private static final String SAO_PAULO = "/owm/daily_16_sao_paulo.json";
+    private static final String NOT_FOUND = "/owm/not_found.json";
+
+    private static final int WARM_UP_PARSES = 2000;
+    private static final int MEASURED_PARSES = 5000;
+
+    /**
+     * Copies out what the sync adapter stores.
+     */
+    private static class RecordingHandler implements OwmForecastParser.Handler {
+        String cityName;
+        double latitude;
+        double longitude;
+        final List<double[]> days = new ArrayList<>();
+        final List<String> descriptions = new ArrayList<>();
+
+        @Override
+        public void onCity(String name, double latitude, double longitude) {
+            this.cityName = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        @Override
+        public void onDay(int index, OwmForecastParser.Day day) {
+            assertEquals(days.size(), index);
+            days.add(new double[]{day.high, day.low, day.pressure, day.humidity,
+                    day.windSpeed, day.windDirection, day.weatherId});
+            descriptions.add(day.description);
+        }
+    }
+
+    private static Reader open(byte[] response) {
+        return new InputStreamReader(new ByteArrayInputStream(response), UTF_8);
+    }
+
+    private static RecordingHandler parse(String json) throws IOException {
+        RecordingHandler handler = new RecordingHandler();
+        assertEquals(HttpURLConnection.HTTP_OK, OwmForecastParser.parse(new StringReader(json), handler));
+        return handler;
+    }
+
+    @Test
+    public void parsesDailyForecast() throws IOException {
+        RecordingHandler handler = new RecordingHandler();
+        int code = OwmForecastParser.parse(open(readResource(MOUNTAIN_VIEW)), handler);
+
+        assertEquals(HttpURLConnection.HTTP_OK, code);
+        assertEquals("Mountain View", handler.cityName);
+        assertEquals(37.386051, handler.latitude, 0);
+        assertEquals(-122.083847, handler.longitude, 0);
+        assertEquals(14, handler.days.size());
+        double[] first = handler.days.get(0);
+        assertEquals(10.71, first[0], 0);
+        assertEquals(6.37, first[1], 0);
+        assertEquals(1023.74, first[2], 0);
+        assertEquals(42, first[3], 0);
+        assertEquals(4.71, first[4], 0);
+        assertEquals(29, first[5], 0);
+        assertEquals(801, first[6], 0);
+        assertEquals("Clouds", handler.descriptions.get(0));
+        assertEquals(501, handler.days.get(13)[6], 0);
+    }
+
+    @Test
+    public void parsesNumericCodeAndEscapes() throws IOException {
+        RecordingHandler handler = new RecordingHandler();
+        int code = OwmForecastParser.parse(open(readResource(SAO_PAULO)), handler);
+
+        assertEquals(HttpURLConnection.HTTP_OK, code);
+        assertEquals("S\u00E3o Paulo", handler.cityName);
+        assertEquals(16, handler.days.size());
+        assertEquals(23.91, handler.days.get(15)[0], 0);
+    }
+
+    @Test
+    public void returnsErrorCode() throws IOException {
+        RecordingHandler handler = new RecordingHandler();
+        int code = OwmForecastParser.parse(open(readResource(NOT_FOUND)), handler);
+
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, code);
+        assertEquals(0, handler.days.size());
+    }
+
+    @Test
+    public void skipsUnknownValues() throws IOException {
+        RecordingHandler handler = parse("{\"extra\":{\"a\":[1,-2.5e3,true,false,null,{\"b\":\"\\\"x\\\"\"}],"
+                + "\"c\":[]},\"city\":{\"name\":\"A\",\"coord\":{\"lat\":1,\"lon\":2,\"alt\":3}},"
+                + "\"list\":[ {\"temp\" : {\"min\":-1,\"max\":1},\"weather\":[{\"id\":\"800\",\"main\":\"Clear\"},{}],"
+                + "\"snow\":{}} ]}");
+
+        assertEquals("A", handler.cityName);
+        assertEquals(1, handler.days.size());
+        assertEquals(800, handler.days.get(0)[6], 0);
+        assertEquals(-1, handler.days.get(0)[1], 0);
+    }
+
+    @Test
+    public void rejectsMalformedResponses() throws IOException {
+        String[] responses = {
+                "[]",
+                "{\"list\":[{}]}",
+                "{\"list\":[{\"temp\":{\"min\":1 \"max\":2}}]}",
+                "{\"city\":{\"name\":\"A\"}} {}",
+                "{\"cod\":\"two hundred\"}",
+        };
+        for (String response : responses) {
+            try {
+                parse(response);
+                fail("Parsed " + response);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedResponse() throws IOException {
+        String response = new String(readResource(MOUNTAIN_VIEW), UTF_8);
+        try {
+            parse(response.substring(0, response.length() / 2));
+            fail();
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void benchmarksAgainstJsonTree() throws IOException, JSONException {
+        byte[] response = readResource(SAO_PAULO);
+
+        long[] tree = measureTree(response);
+        long[] streaming = measureStreaming(response);
+        writeReport(TestOwmForecastParser.class, "tree", format("tree", tree));
+        writeReport(TestOwmForecastParser.class, "streaming", format("streaming", streaming));
+        assertTrue("Streaming allocates as much as the tree", streaming[1] < tree[1]);
+    }
+
+    private static String format(String name, long[] measured) {
+        return String.format(Locale.US, "%-10s %6d parses %8d ns/parse %8d bytes/parse",
+                name, MEASURED_PARSES, measured[0], measured[1]);
+    }
+
+    /**
+     * @return ns and bytes allocated per parse
+     */
+    private static long[] measureStreaming(byte[] response) throws IOException {
+        OwmForecastParser.Handler handler = new OwmForecastParser.Handler() {
+            double sum;
+
+            @Override
+            public void onCity(String name, double latitude, double longitude) {
+                sum += latitude;
+            }
+
+            @Override
+            public void onDay(int index, OwmForecastParser.Day day) {
+                sum += day.high;
+            }
+        };
+        for (int i = 0; i < WARM_UP_PARSES; i++) {
+            OwmForecastParser.parse(open(response), handler);
+        }
+        long bytesBefore = getAllocatedBytes();
+        long nanosBefore = System.nanoTime();
+        for (int i = 0; i < MEASURED_PARSES; i++) {
+            OwmForecastParser.parse(open(response), handler);
+        }
+        long nanos = System.nanoTime() - nanosBefore;
+        long bytes = getAllocatedBytes() - bytesBefore;
+        return new long[]{nanos / MEASURED_PARSES, bytes / MEASURED_PARSES};
+    }
+
+    private static long[] measureTree(byte[] response) throws IOException, JSONException {
+        for (int i = 0; i < WARM_UP_PARSES; i++) {
+            parseTree(response);
+        }
+        long bytesBefore = getAllocatedBytes();
+        long nanosBefore = System.nanoTime();
+        for (int i = 0; i < MEASURED_PARSES; i++) {
+            parseTree(response);
+        }
+        long nanos = System.nanoTime() - nanosBefore;
+        long bytes = getAllocatedBytes() - bytesBefore;
+        return new long[]{nanos / MEASURED_PARSES, bytes / MEASURED_PARSES};
+    }
+
+    /**
+     * The sync adapter's old way of reading a response.
+     */
+    private static double parseTree(byte[] response) throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(open(response));
+        StringBuffer buffer = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+        reader.close();
+
+        JSONObject forecastJson = new JSONObject(buffer.toString());
+        JSONObject cityJson = forecastJson.getJSONObject("city");
+        double sum = cityJson.getJSONObject("coord").getDouble("lat");
+        cityJson.getString("name");
+        JSONArray weatherArray = forecastJson.getJSONArray("list");
+        for (int i = 0; i < weatherArray.length(); i++) {
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+            dayForecast.getDouble("pressure");
+            dayForecast.getInt("humidity");
+            dayForecast.getDouble("speed");
+            dayForecast.getDouble("deg");
+            JSONObject weatherObject = dayForecast.getJSONArray("weather").getJSONObject(0);
+            weatherObject.getString("main");
+            weatherObject.getInt("id");
+            JSONObject temperatureObject = dayForecast.getJSONObject("temp");
+            sum += temperatureObject.getDouble("max");
+            temperatureObject.getDouble("min");
+        }
+        return sum;
+    }
+}
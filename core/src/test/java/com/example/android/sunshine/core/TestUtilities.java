@@ -0,0 +1,76 @@
+package com.example.android.sunshine.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+
+/*
+    Helpers shared by the tests and benchmarks, here and in the wearable module: reading a
+    fixture from the test resources, counting what the current thread allocates so a benchmark
+    can fail when a hot path starts allocating, and writing what a benchmark measured to a
+    report that can be compared across builds.
+ */
+public final class TestUtilities {
+
+    // Relative to the module, which is where Gradle runs its tests
+    private static final File REPORTS_DIR = new File("build/reports/benchmarks");
+
+    private TestUtilities() {
+    }
+
+    /**
+     * @param name a resource path such as {@code /owm/not_found.json}
+     */
+    public static byte[] readResource(String name) throws IOException {
+        InputStream in = TestUtilities.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("No resource " + name);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            out.write(chunk, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes one measurement to {@code build/reports/benchmarks/<test class>/<name>.txt},
+     * replacing the one from the last run.
+     */
+    public static void writeReport(Class<?> test, String name, String report) throws IOException {
+        File dir = new File(REPORTS_DIR, test.getSimpleName());
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Couldn't create " + dir);
+        }
+        File file = new File(dir, name.replaceAll("[^A-Za-z0-9._-]", "_") + ".txt");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+        try {
+            out.write(report);
+            out.write('\n');
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the bytes the current thread has allocated so far
+     */
+    public static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        throw new UnsupportedOperationException("This JVM can't count allocated bytes");
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestWeatherCondition {
+
+    @Test
+    public void mapsConditionIds() {
+        assertEquals(WeatherCondition.STORM, WeatherCondition.fromWeatherId(200));
+        assertEquals(WeatherCondition.LIGHT_RAIN, WeatherCondition.fromWeatherId(321));
+        assertEquals(WeatherCondition.RAIN, WeatherCondition.fromWeatherId(502));
+        assertEquals(WeatherCondition.SNOW, WeatherCondition.fromWeatherId(511));
+        assertEquals(WeatherCondition.RAIN, WeatherCondition.fromWeatherId(531));
+        assertEquals(WeatherCondition.SNOW, WeatherCondition.fromWeatherId(622));
+        assertEquals(WeatherCondition.FOG, WeatherCondition.fromWeatherId(741));
+        assertEquals(WeatherCondition.STORM, WeatherCondition.fromWeatherId(781));
+        assertEquals(WeatherCondition.CLEAR, WeatherCondition.fromWeatherId(800));
+        assertEquals(WeatherCondition.LIGHT_CLOUDS, WeatherCondition.fromWeatherId(801));
+        assertEquals(WeatherCondition.CLOUDS, WeatherCondition.fromWeatherId(804));
+    }
+
+    @Test
+    public void unknownConditionIdsHaveNoCondition() {
+        assertNull(WeatherCondition.fromWeatherId(-1));
+        assertNull(WeatherCondition.fromWeatherId(400));
+        assertNull(WeatherCondition.fromWeatherId(900));
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestWeatherDates {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final TimeZone LOS_ANGELES = TimeZone.getTimeZone("America/Los_Angeles");
+    private static final TimeZone TOKYO = TimeZone.getTimeZone("Asia/Tokyo");
+
+    private static long time(TimeZone timeZone, int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void julianDayOfEpoch() {
+        assertEquals(2440588, WeatherDates.getJulianDay(0, UTC));
+        assertEquals(2440587, WeatherDates.getJulianDay(-1, UTC));
+        // still the last day of 1969 in Los Angeles
+        assertEquals(2440587, WeatherDates.getJulianDay(0, LOS_ANGELES));
+    }
+
+    @Test
+    public void julianDayFollowsLocalMidnight() {
+        long lastMinute = time(TOKYO, 2016, Calendar.JANUARY, 31, 23, 59);
+        long firstMinute = time(TOKYO, 2016, Calendar.FEBRUARY, 1, 0, 0);
+        assertEquals(WeatherDates.getJulianDay(lastMinute, TOKYO) + 1,
+                WeatherDates.getJulianDay(firstMinute, TOKYO));
+    }
+
+    @Test
+    public void startOfDayRoundTrips() {
+        int julianDay = WeatherDates.getJulianDay(time(TOKYO, 2016, Calendar.MARCH, 1, 12, 0), TOKYO);
+        long start = WeatherDates.getStartOfJulianDay(julianDay, TOKYO);
+        assertEquals(time(TOKYO, 2016, Calendar.MARCH, 1, 0, 0), start);
+        assertEquals(julianDay, WeatherDates.getJulianDay(start, TOKYO));
+    }
+
+    @Test
+    public void normalizesAcrossDaylightSavingChanges() {
+        // clocks went forward at 2am on March 13 2016 in Los Angeles, so that day is 23 hours
+        long spring = time(LOS_ANGELES, 2016, Calendar.MARCH, 13, 22, 30);
+        assertEquals(time(LOS_ANGELES, 2016, Calendar.MARCH, 13, 0, 0),
+                WeatherDates.normalizeDate(spring, LOS_ANGELES));
+
+        // and back at 2am on November 6, which is 25 hours long
+        long fall = time(LOS_ANGELES, 2016, Calendar.NOVEMBER, 6, 23, 30);
+        assertEquals(time(LOS_ANGELES, 2016, Calendar.NOVEMBER, 6, 0, 0),
+                WeatherDates.normalizeDate(fall, LOS_ANGELES));
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestWeatherFormat {
+
+    // format_temperature, without its xliff tag
+    private static final String FORMAT = "%1.0f\u00B0";
+
+    @Test
+    public void formatsTemperatures() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+        try {
+            assertEquals("22\u00B0", WeatherFormat.formatTemperature(FORMAT, 21.6, true));
+            assertEquals("-5\u00B0", WeatherFormat.formatTemperature(FORMAT, -5.4, true));
+            assertEquals("71\u00B0", WeatherFormat.formatTemperature(FORMAT, 21.6, false));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
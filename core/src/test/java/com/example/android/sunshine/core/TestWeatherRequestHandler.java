@@ -0,0 +1,178 @@
+package com.example.android.sunshine.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.sunshine.core.TestUtilities.getAllocatedBytes;
+import static com.example.android.sunshine.core.TestUtilities.writeReport;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Checks the phone's answers to the watch's weather requests, then measures what a request
+    costs the phone to handle, with a transport that just records the response in place of the
+    MessageApi. The results go to build/reports/benchmarks/TestWeatherRequestHandler, and it
+    fails if answering starts allocating per request.
+ */
+public class TestWeatherRequestHandler {
+
+    private static final long MAX_AGE_MS = TimeUnit.HOURS.toMillis(3);
+    private static final long NOW_MS = 1450000000000L;
+    private static final long VERSION = 1449990000000L;
+    private static final String NODE_ID = "watch";
+
+    private static final int WARM_UP_REQUESTS = 20000;
+    private static final int MEASURED_REQUESTS = 100000;
+
+    private static class RecordingTransport implements WeatherRequestHandler.Transport {
+        int replies;
+        String nodeId;
+        byte[] response;
+
+        @Override
+        public void reply(String nodeId, byte[] response) {
+            replies++;
+            this.nodeId = nodeId;
+            this.response = response;
+        }
+    }
+
+    private static class RecordingSource implements WeatherRequestHandler.Source {
+        int requests;
+        int staleRequests;
+
+        @Override
+        public void requestSnapshot(boolean stale) {
+            requests++;
+            if (stale) {
+                staleRequests++;
+            }
+        }
+    }
+
+    private RecordingTransport mTransport;
+    private RecordingSource mSource;
+    private WeatherRequestHandler mHandler;
+    private byte[] mPayload;
+
+    @Before
+    public void setUp() {
+        mTransport = new RecordingTransport();
+        mSource = new RecordingSource();
+        mHandler = new WeatherRequestHandler(mTransport, mSource, MAX_AGE_MS);
+        mPayload = new byte[300];
+        Arrays.fill(mPayload, (byte) 7);
+    }
+
+    @Test
+    public void roundTripsRequests() {
+        assertEquals(VERSION, WeatherRequestProtocol.decodeRequest(
+                WeatherRequestProtocol.encodeRequest(VERSION)));
+        assertEquals(0, WeatherRequestProtocol.decodeRequest(
+                WeatherRequestProtocol.encodeRequest(0)));
+        assertEquals(-1, WeatherRequestProtocol.decodeRequest(
+                WeatherRequestProtocol.encodeRequest(-1)));
+    }
+
+    @Test
+    public void answersNotModifiedForCurrentVersion() {
+        mHandler.setSnapshot(VERSION, mPayload, NOW_MS);
+
+        assertTrue(mHandler.handleRequest(NODE_ID, WeatherRequestProtocol.encodeRequest(VERSION), NOW_MS));
+
+        assertEquals(1, mTransport.replies);
+        assertEquals(NODE_ID, mTransport.nodeId);
+        assertEquals(WeatherRequestProtocol.STATUS_NOT_MODIFIED,
+                WeatherRequestProtocol.getStatus(mTransport.response));
+        assertEquals(0, mSource.requests);
+    }
+
+    @Test
+    public void answersSnapshotForOtherVersions() {
+        mHandler.setSnapshot(VERSION, mPayload, NOW_MS);
+
+        mHandler.handleRequest(NODE_ID, WeatherRequestProtocol.encodeRequest(0), NOW_MS);
+        assertEquals(WeatherRequestProtocol.STATUS_MODIFIED,
+                WeatherRequestProtocol.getStatus(mTransport.response));
+        assertArrayEquals(mPayload, WeatherRequestProtocol.getPayload(mTransport.response));
+
+        mHandler.handleRequest(NODE_ID, WeatherRequestProtocol.encodeRequest(VERSION + 1), NOW_MS);
+        assertEquals(WeatherRequestProtocol.STATUS_MODIFIED,
+                WeatherRequestProtocol.getStatus(mTransport.response));
+        assertEquals(0, mSource.requests);
+    }
+
+    @Test
+    public void asksForSnapshotWhenThereIsNone() {
+        assertFalse(mHandler.handleRequest(NODE_ID, WeatherRequestProtocol.encodeRequest(0), NOW_MS));
+
+        assertEquals(0, mTransport.replies);
+        assertEquals(1, mSource.requests);
+        assertEquals(0, mSource.staleRequests);
+    }
+
+    @Test
+    public void asksForNewerSnapshotOncePerMaxAge() {
+        mHandler.setSnapshot(VERSION, mPayload, NOW_MS - MAX_AGE_MS - 1);
+        byte[] request = WeatherRequestProtocol.encodeRequest(VERSION);
+
+        mHandler.handleRequest(NODE_ID, request, NOW_MS);
+        mHandler.handleRequest(NODE_ID, request, NOW_MS + 1000);
+        assertEquals("stale snapshot still answers", 2, mTransport.replies);
+        assertEquals(1, mSource.staleRequests);
+
+        mHandler.handleRequest(NODE_ID, request, NOW_MS + MAX_AGE_MS);
+        assertEquals(2, mSource.staleRequests);
+    }
+
+    @Test
+    public void confirmedSnapshotIsntStale() {
+        mHandler.setSnapshot(VERSION, mPayload, NOW_MS - MAX_AGE_MS - 1);
+        mHandler.confirmSnapshot(NOW_MS);
+
+        mHandler.handleRequest(NODE_ID, WeatherRequestProtocol.encodeRequest(VERSION), NOW_MS);
+        assertEquals(0, mSource.requests);
+    }
+
+    @Test
+    public void ignoresMalformedRequests() {
+        mHandler.setSnapshot(VERSION, mPayload, NOW_MS);
+
+        assertFalse(mHandler.handleRequest(NODE_ID, null, NOW_MS));
+        assertFalse(mHandler.handleRequest(NODE_ID, new byte[3], NOW_MS));
+        assertEquals(0, mTransport.replies);
+    }
+
+    @Test
+    public void measuresRequestHandling() throws IOException {
+        mHandler.setSnapshot(VERSION, mPayload, NOW_MS);
+        report("not modified", WeatherRequestProtocol.encodeRequest(VERSION));
+        report("modified", WeatherRequestProtocol.encodeRequest(VERSION - 1));
+    }
+
+    private void report(String name, byte[] request) throws IOException {
+        for (int i = 0; i < WARM_UP_REQUESTS; i++) {
+            mHandler.handleRequest(NODE_ID, request, NOW_MS);
+        }
+
+        long bytesBefore = getAllocatedBytes();
+        long nanosBefore = System.nanoTime();
+        for (int i = 0; i < MEASURED_REQUESTS; i++) {
+            mHandler.handleRequest(NODE_ID, request, NOW_MS);
+        }
+        long nanos = System.nanoTime() - nanosBefore;
+        long bytes = getAllocatedBytes() - bytesBefore;
+
+        writeReport(TestWeatherRequestHandler.class, name, String.format(Locale.US,
+                "%-14s %7d requests %6d ns/request %6d bytes/request", name, MEASURED_REQUESTS,
+                nanos / MEASURED_REQUESTS, bytes / MEASURED_REQUESTS));
+        assertEquals(name + " allocates while answering", 0, bytes / MEASURED_REQUESTS);
+    }
+}
@@ -0,0 +1,107 @@
+package com.baksoy.wearable;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+public class TestDigitGlyphAtlas extends AndroidTestCase {
+
+    private static final String LOG_TAG = TestDigitGlyphAtlas.class.getSimpleName();
+
+    private static final int FRAME_COUNT = 5000;
+    private static final float TEXT_SIZE = 60f;
+    private static final float BASELINE = 120f;
+
+    private Paint createPaint(int color, int style) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setTypeface(Typeface.create(Typeface.SANS_SERIF, style));
+        paint.setTextSize(TEXT_SIZE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    public void testAdvancesMatchMeasuredText() {
+        Paint digitPaint = createPaint(Color.WHITE, Typeface.BOLD);
+        Paint colonPaint = createPaint(Color.GRAY, Typeface.NORMAL);
+        DigitGlyphAtlas atlas = new DigitGlyphAtlas(digitPaint, colonPaint);
+
+        for (int digit = 0; digit <= 9; digit++) {
+            assertEquals("Advance of " + digit + " doesn't match measureText",
+                    digitPaint.measureText(Integer.toString(digit)), atlas.getAdvance(digit), 0f);
+        }
+        assertEquals("Advance of the colon doesn't match measureText",
+                colonPaint.measureText(":"), atlas.getAdvance(DigitGlyphAtlas.COLON), 0f);
+        atlas.recycle();
+    }
+
+    /*
+        Headless benchmark: draws HH:MM into an offscreen bitmap with drawText, the way the face
+        used to, and with atlas blits, and logs the cost of each per frame.
+     */
+    public void testAtlasBlitsAgainstDrawText() {
+        Paint digitPaint = createPaint(Color.WHITE, Typeface.BOLD);
+        Paint colonPaint = createPaint(Color.GRAY, Typeface.NORMAL);
+        DigitGlyphAtlas atlas = new DigitGlyphAtlas(digitPaint, colonPaint);
+
+        Bitmap bitmap = Bitmap.createBitmap(320, 320, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        char[] time = {'0', '0', ':', '0', '0'};
+
+        // warm up both paths before timing them
+        drawTextFrames(canvas, time, digitPaint, colonPaint, FRAME_COUNT / 10);
+        drawAtlasFrames(canvas, atlas, FRAME_COUNT / 10);
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        drawTextFrames(canvas, time, digitPaint, colonPaint, FRAME_COUNT);
+        long drawTextNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        drawAtlasFrames(canvas, atlas, FRAME_COUNT);
+        long atlasNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        Log.i(LOG_TAG, "drawText: " + drawTextNanos / FRAME_COUNT + " ns/frame, atlas: "
+                + atlasNanos / FRAME_COUNT + " ns/frame");
+
+        atlas.recycle();
+        bitmap.recycle();
+    }
+
+    private void drawTextFrames(Canvas canvas, char[] time, Paint digitPaint, Paint colonPaint,
+                                int frames) {
+        for (int i = 0; i < frames; i++) {
+            int minute = i % 60;
+            int hour = (i / 60) % 24;
+            time[0] = (char) ('0' + hour / 10);
+            time[1] = (char) ('0' + hour % 10);
+            time[3] = (char) ('0' + minute / 10);
+            time[4] = (char) ('0' + minute % 10);
+
+            float x = 20;
+            canvas.drawText(time, 0, 2, x, BASELINE, digitPaint);
+            x += digitPaint.measureText(time, 0, 2);
+            canvas.drawText(time, 2, 1, x, BASELINE, colonPaint);
+            x += colonPaint.measureText(time, 2, 1);
+            canvas.drawText(time, 3, 2, x, BASELINE, digitPaint);
+        }
+    }
+
+    private void drawAtlasFrames(Canvas canvas, DigitGlyphAtlas atlas, int frames) {
+        for (int i = 0; i < frames; i++) {
+            int minute = i % 60;
+            int hour = (i / 60) % 24;
+
+            float x = 20;
+            x += atlas.drawGlyph(canvas, hour / 10, x, BASELINE);
+            x += atlas.drawGlyph(canvas, hour % 10, x, BASELINE);
+            x += atlas.drawGlyph(canvas, DigitGlyphAtlas.COLON, x, BASELINE);
+            x += atlas.drawGlyph(canvas, minute / 10, x, BASELINE);
+            atlas.drawGlyph(canvas, minute % 10, x, BASELINE);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.baksoy.wearable;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import java.util.Calendar;
+
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    private static final int FRAME_COUNT = 10000;
+    private static final int WARM_UP_FRAMES = 100;
+    private static final int SIZE = 320;
+
+    /*
+        Renders 10,000 one-second frames and checks that the draw path never allocates.
+        The frames start at 8am so they never cross midnight, which legitimately rebuilds
+        the date string.
+     */
+    @SuppressWarnings("deprecation")
+    public void testDrawDoesNotAllocate() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(getContext());
+        renderer.applyWindowInsets(false, 0);
+        renderer.setTemperatures("25°", "16°");
+        renderer.setIcon(Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888));
+
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Rect bounds = new Rect(0, 0, SIZE, SIZE);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 8);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        long start = calendar.getTimeInMillis();
+
+        // the first frame of the day formats the date
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            renderer.draw(canvas, bounds, start + i * 1000L);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            renderer.draw(canvas, bounds, start + i * 1000L);
+        }
+        Debug.stopAllocCounting();
+
+        assertEquals("onDraw allocated while rendering " + FRAME_COUNT + " frames",
+                0, Debug.getThreadAllocCount());
+    }
+}
@@ -0,0 +1,232 @@
+package com.baksoy.wearable;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders ambient frames a minute ahead of time.
+ * <p/>
+ * In ambient mode the face only changes once a minute, so while one minute is on screen the
+ * frame for the next one is drawn on a background thread into a reusable low-color bitmap.
+ * When the minute ticks over, {@link #drawFrame} just blits that bitmap, keeping the time the
+ * CPU spends awake per ambient minute as short as possible.
+ * <p/>
+ * The background thread has its own {@link WatchFaceRenderer}, permanently in ambient mode, and
+ * is the only thread that touches it; every input is handed over by posting to that thread.
+ */
+class AmbientFrameRenderer {
+
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long NO_FRAME = -1;
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final WatchFaceRenderer mRenderer;
+
+    private final Object mLock = new Object();
+    // Two frames: the one on screen and the one being prepared. Guarded by mLock.
+    private final Bitmap[] mFrames = new Bitmap[2];
+    private final Canvas[] mFrameCanvases = new Canvas[2];
+    private final long[] mFrameMinutes = {NO_FRAME, NO_FRAME};
+    private final Rect mBounds = new Rect();
+    private long mRequestedMinute = NO_FRAME;
+    // Bumped whenever prepared frames go stale, so a render that was in flight is discarded
+    private int mGeneration;
+
+    // Only used on the background thread
+    private final Rect mRenderBounds = new Rect();
+
+    private final Runnable mRenderNextFrame = new Runnable() {
+        @Override
+        public void run() {
+            renderRequestedFrame();
+        }
+    };
+
+    AmbientFrameRenderer(Context context) {
+        mThread = new HandlerThread("AmbientFrameRenderer", Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+
+        mRenderer = new WatchFaceRenderer(context);
+        mRenderer.setAmbientMode(true);
+    }
+
+    /**
+     * Blits the pre-rendered frame for the current minute, if there is one, and asks for the
+     * next minute's frame to be prepared. Called on the main thread.
+     *
+     * @return false if there was no frame ready, in which case the caller has to draw it itself
+     */
+    boolean drawFrame(Canvas canvas, Rect bounds, long now) {
+        long minute = now / MINUTE_MS;
+        boolean drawn = false;
+        synchronized (mLock) {
+            for (int i = 0; i < mFrames.length; i++) {
+                if (mFrameMinutes[i] == minute && isSized(mFrames[i], bounds)) {
+                    canvas.drawBitmap(mFrames[i], 0, 0, null);
+                    drawn = true;
+                    break;
+                }
+            }
+            requestFrameLocked(bounds, minute + 1);
+        }
+        return drawn;
+    }
+
+    private void requestFrameLocked(Rect bounds, long minute) {
+        if (mRequestedMinute == minute && mBounds.equals(bounds)) {
+            return;
+        }
+        for (int i = 0; i < mFrames.length; i++) {
+            if (mFrameMinutes[i] == minute && isSized(mFrames[i], bounds)) {
+                return;
+            }
+        }
+        mRequestedMinute = minute;
+        mBounds.set(bounds);
+        mHandler.removeCallbacks(mRenderNextFrame);
+        mHandler.post(mRenderNextFrame);
+    }
+
+    /**
+     * Runs on the background thread.
+     */
+    private void renderRequestedFrame() {
+        long minute;
+        int generation;
+        int index;
+        Rect bounds = mRenderBounds;
+        synchronized (mLock) {
+            minute = mRequestedMinute;
+            generation = mGeneration;
+            bounds.set(mBounds);
+            if (minute == NO_FRAME || bounds.isEmpty()) {
+                return;
+            }
+            // reuse the frame that isn't the one for the minute before, i.e. not on screen
+            index = mFrameMinutes[0] == minute - 1 ? 1 : 0;
+            mFrameMinutes[index] = NO_FRAME;
+            if (!isSized(mFrames[index], bounds)) {
+                if (mFrames[index] != null) {
+                    mFrames[index].recycle();
+                }
+                mFrames[index] = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.RGB_565);
+                mFrameCanvases[index] = new Canvas(mFrames[index]);
+            }
+        }
+
+        // The frame is marked as not ready, so the main thread won't read it while we draw
+        mRenderer.draw(mFrameCanvases[index], bounds, minute * MINUTE_MS);
+
+        synchronized (mLock) {
+            if (mGeneration == generation && mRequestedMinute == minute) {
+                mFrameMinutes[index] = minute;
+                mRequestedMinute = NO_FRAME;
+            }
+        }
+    }
+
+    private static boolean isSized(Bitmap frame, Rect bounds) {
+        return frame != null && frame.getWidth() == bounds.width() && frame.getHeight() == bounds.height();
+    }
+
+    /**
+     * Throws away prepared frames, e.g. when leaving ambient mode or when the data drawn on them
+     * has changed. The bitmaps are kept for reuse.
+     */
+    void invalidate() {
+        synchronized (mLock) {
+            mFrameMinutes[0] = NO_FRAME;
+            mFrameMinutes[1] = NO_FRAME;
+            mRequestedMinute = NO_FRAME;
+            mGeneration++;
+            mHandler.removeCallbacks(mRenderNextFrame);
+        }
+    }
+
+    void applyWindowInsets(final boolean isRound, final int chinHeight) {
+        invalidate();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mRenderer.applyWindowInsets(isRound, chinHeight);
+            }
+        });
+    }
+
+    void setLowBitAmbient(final boolean lowBitAmbient) {
+        invalidate();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mRenderer.setLowBitAmbient(lowBitAmbient);
+            }
+        });
+    }
+
+    void setTemperatures(final String highTemp, final String lowTemp) {
+        invalidate();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mRenderer.setTemperatures(highTemp, lowTemp);
+            }
+        });
+    }
+
+    void onTimeZoneChanged() {
+        invalidate();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mRenderer.onTimeZoneChanged();
+            }
+        });
+    }
+
+    /**
+     * @return the bytes held by the prepared frames and the renderer drawing them
+     */
+    long getBitmapBytes() {
+        long bytes = mRenderer.getBitmapBytes();
+        synchronized (mLock) {
+            for (Bitmap frame : mFrames) {
+                if (frame != null && !frame.isRecycled()) {
+                    bytes += frame.getAllocationByteCount();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Stops the background thread and frees the frames.
+     */
+    void release() {
+        invalidate();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mRenderer.release();
+                synchronized (mLock) {
+                    for (int i = 0; i < mFrames.length; i++) {
+                        if (mFrames[i] != null) {
+                            mFrames[i].recycle();
+                            mFrames[i] = null;
+                            mFrameCanvases[i] = null;
+                        }
+                    }
+                }
+            }
+        });
+        mThread.quitSafely();
+    }
+}
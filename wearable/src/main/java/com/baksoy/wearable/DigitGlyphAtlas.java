@@ -0,0 +1,89 @@
+package com.baksoy.wearable;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * The digits 0-9 and the colon, pre-rendered side by side into one bitmap together with their
+ * advance widths. Drawing the time is then a handful of bitmap blits instead of shaping and
+ * rasterizing text on every frame.
+ * <p/>
+ * An atlas is only valid for the paints it was built from; build a new one whenever their
+ * typeface, size, color or anti-aliasing changes.
+ */
+class DigitGlyphAtlas {
+
+    /**
+     * Glyph index of the colon. The digits use their own value as index.
+     */
+    static final int COLON = 10;
+
+    private static final char[] GLYPHS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', ':'};
+
+    // Room around each glyph for pixels that overhang the advance width
+    private static final int PADDING = 2;
+
+    private final Bitmap mBitmap;
+    private final float[] mAdvances = new float[GLYPHS.length];
+    private final int mCellWidth;
+    private final int mCellHeight;
+    private final int mAscent;
+
+    private final Rect mSrc = new Rect();
+    private final Rect mDst = new Rect();
+
+    DigitGlyphAtlas(Paint digitPaint, Paint colonPaint) {
+        float maxAdvance = 0;
+        for (int i = 0; i < GLYPHS.length; i++) {
+            Paint paint = i == COLON ? colonPaint : digitPaint;
+            mAdvances[i] = paint.measureText(GLYPHS, i, 1);
+            maxAdvance = Math.max(maxAdvance, mAdvances[i]);
+        }
+
+        Paint.FontMetricsInt digitMetrics = digitPaint.getFontMetricsInt();
+        Paint.FontMetricsInt colonMetrics = colonPaint.getFontMetricsInt();
+        int top = Math.min(digitMetrics.top, colonMetrics.top);
+        int bottom = Math.max(digitMetrics.bottom, colonMetrics.bottom);
+
+        mAscent = -top + PADDING;
+        mCellWidth = (int) Math.ceil(maxAdvance) + 2 * PADDING;
+        mCellHeight = bottom - top + 2 * PADDING;
+
+        mBitmap = Bitmap.createBitmap(mCellWidth * GLYPHS.length, mCellHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(mBitmap);
+        for (int i = 0; i < GLYPHS.length; i++) {
+            Paint paint = i == COLON ? colonPaint : digitPaint;
+            canvas.drawText(GLYPHS, i, 1, i * mCellWidth + PADDING, mAscent, paint);
+        }
+    }
+
+    float getAdvance(int glyph) {
+        return mAdvances[glyph];
+    }
+
+    /**
+     * Blits one glyph with its pen position at {@code x} and its baseline at {@code baseline}.
+     *
+     * @return the glyph's advance width, i.e. how far to move the pen for the next glyph
+     */
+    float drawGlyph(Canvas canvas, int glyph, float x, float baseline) {
+        int left = Math.round(x) - PADDING;
+        int top = Math.round(baseline) - mAscent;
+        int cellLeft = glyph * mCellWidth;
+
+        mSrc.set(cellLeft, 0, cellLeft + mCellWidth, mCellHeight);
+        mDst.set(left, top, left + mCellWidth, top + mCellHeight);
+        canvas.drawBitmap(mBitmap, mSrc, mDst, null);
+        return mAdvances[glyph];
+    }
+
+    int getByteCount() {
+        return mBitmap.getAllocationByteCount();
+    }
+
+    void recycle() {
+        mBitmap.recycle();
+    }
+}
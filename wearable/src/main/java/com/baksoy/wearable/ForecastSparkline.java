@@ -0,0 +1,171 @@
+package com.baksoy.wearable;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+
+import com.example.android.sunshine.core.ForecastDay;
+
+import java.util.List;
+
+/**
+ * Sparklines of the coming days' highs and lows along the bottom of the face, following the
+ * edge of the screen on round watches.
+ * <p/>
+ * Temperatures are kept in primitive arrays in tenths of a degree, and the lines are built into
+ * two reusable {@link Path}s only when the forecast or the surface changes. The face draws them
+ * into its static layer, so they cost nothing per frame.
+ */
+class ForecastSparkline {
+
+    // A forecast record holds at most two weeks
+    private static final int MAX_DAYS = 16;
+
+    // In WatchFaceLayout's reference units
+    private static final float INSET = 14f;
+    private static final float AMPLITUDE = 22f;
+    private static final float STROKE_WIDTH = 2f;
+    // How much of the bottom of a round screen the lines span
+    private static final double ARC_DEGREES = 100;
+    // How much of the width of a square screen they span
+    private static final float LINE_WIDTH = 0.7f;
+
+    private final short[] mHighs = new short[MAX_DAYS];
+    private final short[] mLows = new short[MAX_DAYS];
+    private int mDays;
+
+    private final Path mHighPath = new Path();
+    private final Path mLowPath = new Path();
+    private final Paint mHighPaint;
+    private final Paint mLowPaint;
+    private boolean mPathsDirty = true;
+
+    // The surface the paths were built for
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private boolean mIsRound;
+    private int mChinHeight = -1;
+
+    ForecastSparkline(int highColor, int lowColor) {
+        mHighPaint = createLinePaint(highColor);
+        mLowPaint = createLinePaint(lowColor);
+    }
+
+    private static Paint createLinePaint(int color) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setAntiAlias(true);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        return paint;
+    }
+
+    /**
+     * Takes the days of {@code forecast} from {@code firstDay} on.
+     *
+     * @return whether the lines changed
+     */
+    boolean setForecast(List<ForecastDay> forecast, int firstDay) {
+        int days = 0;
+        boolean changed = false;
+        for (int i = 0, size = forecast.size(); i < size && days < MAX_DAYS; i++) {
+            ForecastDay day = forecast.get(i);
+            if (day.julianDay < firstDay) {
+                continue;
+            }
+            short high = (short) Math.round(day.maxTemp * 10);
+            short low = (short) Math.round(day.minTemp * 10);
+            if (days >= mDays || mHighs[days] != high || mLows[days] != low) {
+                mHighs[days] = high;
+                mLows[days] = low;
+                changed = true;
+            }
+            days++;
+        }
+        if (days != mDays) {
+            mDays = days;
+            changed = true;
+        }
+        if (changed) {
+            mPathsDirty = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Draws the lines, rebuilding them first if the forecast or the surface changed.
+     */
+    void draw(Canvas canvas, Rect bounds, boolean isRound, int chinHeight) {
+        // a line needs two days
+        if (mDays < 2) {
+            return;
+        }
+        int width = bounds.width();
+        int height = bounds.height();
+        if (mPathsDirty || width != mWidth || height != mHeight || isRound != mIsRound
+                || chinHeight != mChinHeight) {
+            mWidth = width;
+            mHeight = height;
+            mIsRound = isRound;
+            mChinHeight = chinHeight;
+            buildPaths();
+            mPathsDirty = false;
+        }
+        canvas.drawPath(mLowPath, mLowPaint);
+        canvas.drawPath(mHighPath, mHighPaint);
+    }
+
+    private void buildPaths() {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < mDays; i++) {
+            min = Math.min(min, mLows[i]);
+            max = Math.max(max, mHighs[i]);
+        }
+        // flat weather is drawn as a line along the bottom
+        float range = Math.max(max - min, 1);
+
+        float scale = Math.min(mWidth, mHeight) / WatchFaceLayout.REFERENCE_SIZE;
+        float inset = INSET * scale;
+        float amplitude = AMPLITUDE * scale;
+        float strokeWidth = STROKE_WIDTH * scale;
+        mHighPaint.setStrokeWidth(strokeWidth);
+        mLowPaint.setStrokeWidth(strokeWidth);
+
+        float centerX = mWidth / 2f;
+        float centerY = mHeight / 2f;
+        // the lowest point of the lines, kept clear of the chin
+        float bottom = (mIsRound ? mHeight - mChinHeight : mHeight) - inset;
+
+        mHighPath.rewind();
+        mLowPath.rewind();
+        for (int i = 0; i < mDays; i++) {
+            float position = i / (float) (mDays - 1);
+            float high = (mHighs[i] - min) / range * amplitude;
+            float low = (mLows[i] - min) / range * amplitude;
+            if (mIsRound) {
+                // from left to right along the bottom of the circle, higher is further in
+                double angle = Math.toRadians(90 + ARC_DEGREES / 2 - position * ARC_DEGREES);
+                float radius = Math.min(centerX - inset, bottom - centerY);
+                float cos = (float) Math.cos(angle);
+                float sin = (float) Math.sin(angle);
+                addPoint(mHighPath, i, centerX + (radius - high) * cos, centerY + (radius - high) * sin);
+                addPoint(mLowPath, i, centerX + (radius - low) * cos, centerY + (radius - low) * sin);
+            } else {
+                float x = centerX + (position - 0.5f) * LINE_WIDTH * mWidth;
+                addPoint(mHighPath, i, x, bottom - high);
+                addPoint(mLowPath, i, x, bottom - low);
+            }
+        }
+    }
+
+    private static void addPoint(Path path, int index, float x, float y) {
+        if (index == 0) {
+            path.moveTo(x, y);
+        } else {
+            path.lineTo(x, y);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.baksoy.wearable;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks how often the face has to be redrawn in interactive mode from what it actually shows.
+ * <p/>
+ * A face without seconds only changes once a minute, which the system's minute tick already
+ * covers, so no timer is needed at all. Second ticks are only used while a seconds element is
+ * visible, and even then fall back to minute ticks in mute mode or battery saver. Ticks are
+ * always aligned to wall-clock boundaries.
+ * <p/>
+ * It also counts the frames drawn and timer wakeups per wall-clock hour, which {@link #dump}
+ * adds to the service's dumpsys so the effect can be checked on a real watch. The hour only
+ * rolls over on a tick, never while drawing, so a frame drawn in the minute after the hour is
+ * counted to the hour before.
+ */
+class FrameRateController {
+
+    static final long SECOND_TICK_MS = TimeUnit.SECONDS.toMillis(1);
+    static final long MINUTE_TICK_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final boolean mSecondsVisible;
+    private boolean mMuted;
+    private boolean mPowerSaveMode;
+
+    // Written on the UI thread only; volatile so dump() can read them from a binder thread
+    private long mCurrentHour = -1;
+    private volatile int mFramesThisHour;
+    private volatile int mTicksThisHour;
+    private volatile int mFramesLastHour;
+    private volatile int mTicksLastHour;
+
+    /**
+     * @param secondsVisible whether the face shows anything that changes every second
+     */
+    FrameRateController(boolean secondsVisible) {
+        mSecondsVisible = secondsVisible;
+    }
+
+    void setMuted(boolean muted) {
+        mMuted = muted;
+    }
+
+    void setPowerSaveMode(boolean powerSaveMode) {
+        mPowerSaveMode = powerSaveMode;
+    }
+
+    /**
+     * The interactive mode tick period in milliseconds.
+     */
+    long getTickPeriodMs() {
+        if (mSecondsVisible && !mMuted && !mPowerSaveMode) {
+            return SECOND_TICK_MS;
+        }
+        return MINUTE_TICK_MS;
+    }
+
+    /**
+     * Whether the face needs its own timer, or the system's minute tick is often enough.
+     */
+    boolean needsTimer() {
+        return getTickPeriodMs() < MINUTE_TICK_MS;
+    }
+
+    /**
+     * How long to wait from {@code now} until the next tick boundary.
+     */
+    long getDelayToNextTickMs(long now) {
+        long periodMs = getTickPeriodMs();
+        return periodMs - (now % periodMs);
+    }
+
+    /**
+     * Called on each of the face's own timer ticks.
+     */
+    void onTick(long now) {
+        rollOverHour(now);
+        mTicksThisHour++;
+    }
+
+    /**
+     * Called on the system's minute tick.
+     */
+    void onTimeTick(long now) {
+        rollOverHour(now);
+    }
+
+    /**
+     * Called from onDraw, so it only counts.
+     */
+    void onFrameDrawn() {
+        mFramesThisHour++;
+    }
+
+    int getFramesThisHour() {
+        return mFramesThisHour;
+    }
+
+    int getFramesLastHour() {
+        return mFramesLastHour;
+    }
+
+    int getTicksThisHour() {
+        return mTicksThisHour;
+    }
+
+    int getTicksLastHour() {
+        return mTicksLastHour;
+    }
+
+    /**
+     * Writes the tick period and the counts of this hour and the last, in the style of dumpsys.
+     */
+    void dump(String prefix, PrintWriter out) {
+        out.println(String.format(Locale.US,
+                "%stick period %dms: %d frames, %d timer ticks this hour; %d frames, %d timer ticks last hour",
+                prefix, getTickPeriodMs(), getFramesThisHour(), getTicksThisHour(),
+                getFramesLastHour(), getTicksLastHour()));
+    }
+
+    private void rollOverHour(long now) {
+        long hour = now / HOUR_MS;
+        if (hour == mCurrentHour) {
+            return;
+        }
+        if (mCurrentHour != -1) {
+            mFramesLastHour = hour == mCurrentHour + 1 ? mFramesThisHour : 0;
+            mTicksLastHour = hour == mCurrentHour + 1 ? mTicksThisHour : 0;
+        }
+        mCurrentHour = hour;
+        mFramesThisHour = 0;
+        mTicksThisHour = 0;
+    }
+}
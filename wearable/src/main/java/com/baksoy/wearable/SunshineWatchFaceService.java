@@ -4,71 +4,129 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
-import android.support.v4.content.ContextCompat;
+import android.os.PowerManager;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.DateFormat;
-import android.text.format.Time;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.core.ForecastCodec;
+import com.example.android.sunshine.core.ForecastDay;
+import com.example.android.sunshine.core.WeatherDates;
+import com.example.android.sunshine.core.WeatherFormat;
+import com.example.android.sunshine.core.WeatherRequestProtocol;
+import com.example.android.sunshine.core.WearableData;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face showing the time, date and today's forecast. On devices with low-bit
+ * ambient mode, the text is drawn without anti-aliasing in ambient mode.
  */
 public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
     private static final String LOG_TAG = SunshineWatchFaceService.class.getSimpleName();
 
     /**
-     * Interactive mode update rate in milliseconds.
+     * Handler message id for updating the time periodically in interactive mode.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final int MSG_UPDATE_TIME = 0;
 
     /**
-     * Handler message id for updating the time periodically in interactive mode.
+     * How long the face goes without asking the phone for the weather when it's shown.
      */
-    private static final int MSG_UPDATE_TIME = 0;
+    private static final long WEATHER_REQUEST_INTERVAL_MS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Matches the weather item put by any node.
+     */
+    private static final Uri WEATHER_DATA_URI = new Uri.Builder()
+            .scheme(PutDataRequest.WEAR_URI_SCHEME)
+            .path(WearableData.PATH_WEATHER)
+            .build();
+
+    // Shared by all engines so they don't each fetch the same icon
+    private GoogleApiClient mIconLoaderClient;
+    private WeatherIconLoader mIconLoader;
+
+    // The work done by all engines, for dumpsys and the hourly log line
+    private final WatchFaceStats mStats = new WatchFaceStats();
+    private final List<Engine> mEngines = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // connected on the loader's thread the first time it needs it
+        mIconLoaderClient = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .build();
+        mIconLoader = new WeatherIconLoader(this, mIconLoaderClient, mStats);
+    }
+
+    @Override
+    public void onDestroy() {
+        mIconLoader.release();
+        mIconLoaderClient.disconnect();
+        super.onDestroy();
+    }
 
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
+    /**
+     * Adds the work counters, and each engine's frame rate, to
+     * {@code adb shell dumpsys activity service SunshineWatchFaceService}.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter out, String[] args) {
+        super.dump(fd, out, args);
+        long bitmapBytes = 0;
+        for (Engine engine : mEngines) {
+            bitmapBytes += engine.getBitmapBytes();
+        }
+        mStats.dump("", out, bitmapBytes);
+        out.println("Frame rate:");
+        for (Engine engine : mEngines) {
+            engine.mFrameRate.dump("  ", out);
+        }
+    }
+
     private static class EngineHandler extends Handler {
         private final WeakReference<SunshineWatchFaceService.Engine> mWeakReference;
 
@@ -93,88 +151,63 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
     private class Engine extends CanvasWatchFaceService.Engine implements
             GoogleApiClient.ConnectionCallbacks,
             GoogleApiClient.OnConnectionFailedListener,
-            DataApi.DataListener {
+            DataApi.DataListener,
+            MessageApi.MessageListener,
+            WeatherIconLoader.Listener {
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
 
-        //Member variables
-        private Calendar mCalendar;
-        private Date mDate;
-        private SimpleDateFormat mDayOfWeekFormat;
-        private java.text.DateFormat mDateFormat;
-
-        private final Typeface BOLD_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
-        private final Typeface NORMAL_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
-        private Bitmap mWeatherIcon;
-
-        private float mLineHeight;
-        private static final String COLON_STRING = ":";
-        private static final int TEXT_DATE_COLOR = Color.GRAY;
-        private static final int TEXT_COLON_COLOR = Color.GRAY;
-        private static final int TEXT_HOURS_MINS_COLOR = Color.WHITE;
-        private static final int TEXT_SECONDS_COLOR = Color.WHITE;
-        private final Typeface WATCH_TEXT_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+        // The face doesn't draw seconds, so this settles on minute ticks
+        private final FrameRateController mFrameRate =
+                new FrameRateController(WatchFaceRenderer.DRAWS_SECONDS);
 
-        private static final long DEFAULT_UPDATE_RATE_MS = 1000;
-        private long mUpdateRateMs = 1000;
-
-        private Paint mBackgroundColorPaint;
-        private Paint mTextColorPaint;
-        private Paint mHourPaint;
-        private Paint mColonPaint;
-        private Paint mMinutePaint;
-        private Paint mSecondPaint;
-        private Paint mTemperaturePaint;
+        private WatchFaceRenderer mRenderer;
+        private AmbientFrameRenderer mAmbientFrames;
 
         private boolean mHasTimeZoneReceiverBeenRegistered = false;
         private boolean mIsInMuteMode;
-        private boolean mIsLowBitAmbient;
-
-        private float mXOffset;
-        private float mColonWidth;
-
-        private final int mTextColor = ContextCompat.getColor(getApplicationContext(), R.color.text_color);
-        private final int mBackgroundColor = ContextCompat.getColor(getApplicationContext(), R.color.background_color);
-        private final int temperatureColor = ContextCompat.getColor(getApplicationContext(), R.color.temperature_color);
-        private final int mTextColorAmbient = ContextCompat.getColor(getApplicationContext(), R.color.text_color_ambient);
-        private final int mBackgroundColorAmbient = ContextCompat.getColor(getApplicationContext(), R.color.background_color_ambient);
-
-        private boolean mRegisteredTimeZoneReceiver = false;
-
-        private Bitmap mIcon;
 
-        private Paint mDatePaint;
-        private Paint mIconPaint;
-
-        Time mTime;
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
-                mTime.setToNow();
+                mRenderer.onTimeZoneChanged();
+                mAmbientFrames.onTimeZoneChanged();
+                invalidate();
             }
         };
 
-        float mYOffset;
-
-        String mLowTemp = "";
-        String mHighTemp = "";
+        final BroadcastReceiver mPowerSaveModeReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                updatePowerSaveMode();
+            }
+        };
 
         private GoogleApiClient mGoogleApiClient;
-
-        /**
-         * Whether the display supports fewer bits for each color in ambient mode. When true, we
-         * disable anti-aliasing in ambient mode.
-         */
-        boolean mLowBitAmbient;
+        private WeatherCache mWeatherCache;
+
+        // Version of the weather on screen, so a late initial fetch can't replace newer weather
+        private long mDataVersion;
+        private String mPayloadDigest;
+        private long mLastWeatherRequestMs;
+
+        // The rest of the phone's forecast, so the face can move on to the next day by itself,
+        // and the record it was decoded from, which is also what's saved and compared
+        private List<ForecastDay> mForecast = Collections.emptyList();
+        private volatile byte[] mForecastRecord;
+        private volatile boolean mMetric = true;
+        private volatile int mForecastDay;
+
+        // The weather on screen, read on the icon loader's thread when it's saved
+        private volatile String mHighTemp = "";
+        private volatile String mLowTemp = "";
+        private volatile int mConditionId = -1;
+        private volatile Bitmap mIcon;
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
 
-            Resources resources = SunshineWatchFaceService.this.getResources();
-
             //set how the system interacts with the user when the watch face is active
             setWatchFaceStyle(new WatchFaceStyle.Builder(SunshineWatchFaceService.this)
                             .setBackgroundVisibility(WatchFaceStyle.BACKGROUND_VISIBILITY_INTERRUPTIVE)
@@ -185,34 +218,28 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                             .build()
             );
 
-            // initialize the background
-            initBackground();
-
-            // initialize the display text
-            initDisplayText();
-
-            //Draw the Weather Icon
-            Drawable weatherDraw = resources.getDrawable(R.mipmap.weather_icon, null);
-            mWeatherIcon = ((BitmapDrawable) weatherDraw) != null ? ((BitmapDrawable) weatherDraw).getBitmap() : null;
-            mIconPaint = new Paint();
-
-            mYOffset = resources.getDimension(R.dimen.fit_y_offset);
-            mLineHeight = resources.getDimension(R.dimen.fit_line_height);
-
-            mDatePaint = createTextPaint(TEXT_DATE_COLOR);
-            mHourPaint = createTextPaint(TEXT_HOURS_MINS_COLOR, BOLD_TYPEFACE);
-            mMinutePaint = createTextPaint(TEXT_HOURS_MINS_COLOR, BOLD_TYPEFACE);
-            mSecondPaint = createTextPaint(TEXT_SECONDS_COLOR);
-            mColonPaint = createTextPaint(TEXT_COLON_COLOR);
-            mTemperaturePaint = createTextPaint(temperatureColor);
-
-            //load background image
-            //Drawable backgroundDrawable = resources.getDrawable(R.drawable.bg, null);
-            //mBackgroundBitmap = ((BitmapDrawable) backgroundDrawable).getBitmap();
+            mRenderer = new WatchFaceRenderer(SunshineWatchFaceService.this);
+            mAmbientFrames = new AmbientFrameRenderer(SunshineWatchFaceService.this);
+
+            // show the last known weather until the phone sends something newer
+            mWeatherCache = new WeatherCache(SunshineWatchFaceService.this);
+            WeatherCache.Entry cached = mWeatherCache.load();
+            if (cached != null) {
+                mConditionId = cached.conditionId;
+                mIcon = cached.icon;
+                setTemperatures(cached.highTemp, cached.lowTemp);
+                mRenderer.setIcon(cached.icon);
+                mMetric = cached.metric;
+                mForecastRecord = cached.forecast;
+                mForecast = decodeForecast(cached.forecast);
+                mForecastDay = cached.forecastDay;
+                updateForecastDay();
+                mRenderer.setForecast(mForecast, mForecastDay);
+            }
 
-            mCalendar = Calendar.getInstance();
-            mDate = new Date();
-            initFormats();
+            SunshineWatchFaceService.this.registerReceiver(mPowerSaveModeReceiver,
+                    new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED));
+            updatePowerSaveMode();
 
             mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFaceService.this)
                     .addConnectionCallbacks(this)
@@ -220,45 +247,26 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     .addApi(Wearable.API)
                     .build();
 
+            mIconLoader.addListener(this);
+            mEngines.add(this);
+
             mGoogleApiClient.connect();
             Log.d(LOG_TAG, "GoogleApiClient Connected");
         }
 
-        private void initBackground() {
-            mBackgroundColorPaint = new Paint();
-            mBackgroundColorPaint.setColor(mBackgroundColor);
-        }
-
-        private void initDisplayText() {
-            mTextColorPaint = new Paint();
-            mTextColorPaint.setColor(mTextColor);
-            mTextColorPaint.setTypeface(WATCH_TEXT_TYPEFACE);
-            mTextColorPaint.setAntiAlias(true);
-            mTextColorPaint.setTextSize(getResources().getDimension(R.dimen.text_size));
-        }
-
-        private void initFormats() {
-            mDayOfWeekFormat = new SimpleDateFormat("EEEE", Locale.getDefault());
-            mDayOfWeekFormat.setCalendar(mCalendar);
-            mDateFormat = DateFormat.getDateFormat(SunshineWatchFaceService.this);
-            mDateFormat.setCalendar(mCalendar);
-        }
-
-        private Paint createTextPaint(int color) {
-            return createTextPaint(color, NORMAL_TYPEFACE);
-        }
-
-        private Paint createTextPaint(int color, Typeface typeface) {
-            Paint paint = new Paint();
-            paint.setColor(color);
-            paint.setTypeface(typeface);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            SunshineWatchFaceService.this.unregisterReceiver(mPowerSaveModeReceiver);
+            mIconLoader.removeListener(this);
+            mEngines.remove(this);
+            if (mGoogleApiClient.isConnected()) {
+                Wearable.DataApi.removeListener(mGoogleApiClient, this);
+                Wearable.MessageApi.removeListener(mGoogleApiClient, this);
+            }
+            mGoogleApiClient.disconnect();
+            mRenderer.release();
+            mAmbientFrames.release();
             super.onDestroy();
         }
 
@@ -276,8 +284,12 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     SunshineWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
                     mHasTimeZoneReceiverBeenRegistered = true;
                 }
-                long now = System.currentTimeMillis();
-                mCalendar.setTimeInMillis(now);
+                // the time zone may have changed while we weren't listening
+                mRenderer.onTimeZoneChanged();
+                mAmbientFrames.onTimeZoneChanged();
+                if (System.currentTimeMillis() - mLastWeatherRequestMs > WEATHER_REQUEST_INTERVAL_MS) {
+                    requestWeather();
+                }
             } else {
                 //if not visible and has been registered, then unregister it
                 if (mHasTimeZoneReceiverBeenRegistered) {
@@ -296,15 +308,9 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onInterruptionFilterChanged(interruptionFilter);
             boolean isDeviceMuted = (interruptionFilter == android.support.wearable.watchface.WatchFaceService.INTERRUPTION_FILTER_NONE);
 
-            if (isDeviceMuted) {
-                mUpdateRateMs = TimeUnit.MINUTES.toMillis(1);
-            } else {
-                mUpdateRateMs = DEFAULT_UPDATE_RATE_MS;
-            }
+            mFrameRate.setMuted(isDeviceMuted);
             if (mIsInMuteMode != isDeviceMuted) {
                 mIsInMuteMode = isDeviceMuted;
-                int alpha = (isDeviceMuted) ? 100 : 255;
-                mTextColorPaint.setAlpha(alpha);
                 invalidate();
                 updateTimer();
             }
@@ -315,32 +321,22 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
          * Update the current time every minute by using the built-in
          * onTimeTick method to invalidate the Canvas.
          * Called periodically to update the time shown by the watch face.
-         * at least once per minute in both ambient and interactive modes
+         * at least once per minute in both ambient and interactive modes.
+         * In ambient mode the frame for the new minute has already been drawn by
+         * {@link AmbientFrameRenderer}, so the redraw is just a blit.
          **/
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            mFrameRate.onTimeTick(System.currentTimeMillis());
+            if (mStats.shouldLog(System.currentTimeMillis())) {
+                Log.i(LOG_TAG, mStats.toLogLine());
+            }
+            updateForecastDay();
             //invalidate the canvas
             invalidate();
         }
 
-        private void registerReceiver() {
-            if (mRegisteredTimeZoneReceiver) {
-                return;
-            }
-            mRegisteredTimeZoneReceiver = true;
-            IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
-            SunshineWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
-        }
-
-        private void unregisterReceiver() {
-            if (!mRegisteredTimeZoneReceiver) {
-                return;
-            }
-            mRegisteredTimeZoneReceiver = false;
-            SunshineWatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
-        }
-
         /**
          * Called when your service is associated with Android Wear
          * and determines if your watch face is Rounded or Square
@@ -349,27 +345,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onApplyWindowInsets(WindowInsets insets) {
             super.onApplyWindowInsets(insets);
-
-            Resources resources = SunshineWatchFaceService.this.getResources();
-            boolean isRound = insets.isRound();
-
-            mYOffset = getResources().getDimension(R.dimen.y_offset);
-            if (insets.isRound()) {
-                mXOffset = getResources().getDimension(R.dimen.x_offset_round);
-            } else {
-                mXOffset = getResources().getDimension(R.dimen.x_offset_square);
-            }
-
-            float textSize = resources.getDimension(isRound
-                    ? R.dimen.fit_text_size_round : R.dimen.fit_text_size);
-
-            mHourPaint.setTextSize(textSize);
-            mMinutePaint.setTextSize(textSize);
-            mSecondPaint.setTextSize(textSize);
-            mColonPaint.setTextSize(textSize);
-            mDatePaint.setTextSize(resources.getDimension(R.dimen.fit_date_text_size));
-            mTemperaturePaint.setTextSize(resources.getDimension(R.dimen.fit_temperature_text_size));
-            mColonWidth = mColonPaint.measureText(COLON_STRING);
+            mRenderer.applyWindowInsets(insets.isRound(), insets.getSystemWindowInsetBottom());
+            mAmbientFrames.applyWindowInsets(insets.isRound(), insets.getSystemWindowInsetBottom());
         }
 
         /**
@@ -380,46 +357,22 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             if (properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false)) {
-                mIsLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
-                mHourPaint.setTypeface(NORMAL_TYPEFACE);
+                boolean lowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+                mRenderer.setLowBitAmbient(lowBitAmbient);
+                mAmbientFrames.setLowBitAmbient(lowBitAmbient);
             }
         }
 
-        private String formatTwoDigitNumber(int hour) {
-            return String.format("%02d", hour);
-        }
-
         /**
          * Called when the device moves in and out of Ambient mode
          **/
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
-            if (inAmbientMode) {
-                mTextColorPaint.setColor(mTextColorAmbient);
-                mHourPaint.setTypeface(NORMAL_TYPEFACE);
-                mMinutePaint.setTypeface(NORMAL_TYPEFACE);
-                mBackgroundColorPaint.setColor(mBackgroundColorAmbient);
-                mDatePaint.setColor(mBackgroundColorAmbient);
-                mTemperaturePaint.setColor(mBackgroundColorAmbient);
-                mIconPaint.setAlpha(0);
-            } else {
-                mTextColorPaint.setColor(mTextColor);
-                mHourPaint.setTypeface(BOLD_TYPEFACE);
-                mMinutePaint.setTypeface(BOLD_TYPEFACE);
-                mBackgroundColorPaint.setColor(mBackgroundColor);
-                mDatePaint.setColor(TEXT_DATE_COLOR);
-                mTemperaturePaint.setColor(temperatureColor);
-                mIconPaint.setAlpha(255);
-            }
-
-            if (mIsLowBitAmbient) {
-                boolean antiAlias = !inAmbientMode;
-                mTextColorPaint.setAntiAlias(antiAlias);
-                mHourPaint.setAntiAlias(antiAlias);
-                mMinutePaint.setAntiAlias(!antiAlias);
-                mSecondPaint.setAntiAlias(!antiAlias);
-                mDatePaint.setAntiAlias(!antiAlias);
+            mRenderer.setAmbientMode(inAmbientMode);
+            if (!inAmbientMode) {
+                // frames prepared ahead of time would be stale by the next time we're ambient
+                mAmbientFrames.invalidate();
             }
             invalidate();
             updateTimer();
@@ -428,53 +381,26 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
+            long start = System.nanoTime();
             long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            boolean is24Hour = DateFormat.is24HourFormat(SunshineWatchFaceService.this);
-
-            drawBackground(canvas, bounds);
-
-            float x = mXOffset;
-
-            // Draw the Date
-            canvas.drawText(mDateFormat.format(mDate), 105, 60 + mLineHeight, mDatePaint);
-
-            // Draw the Hour
-            String hourString = formatTwoDigitNumber(mCalendar.get(Calendar.HOUR_OF_DAY));
-            canvas.drawText(hourString, x, mYOffset, mHourPaint);
-            x += mHourPaint.measureText(hourString);
-
-            // Draw first colon (between hour and minute).
-            canvas.drawText(COLON_STRING, x, mYOffset, mColonPaint);
-
-            x += mColonWidth;
-
-            // Draw the Minute
-            String minuteString = formatTwoDigitNumber(mCalendar.get(Calendar.MINUTE));
-            canvas.drawText(minuteString, x, mYOffset, mMinutePaint);
-            x += mMinutePaint.measureText(minuteString);
-
-            //Get center
-            float centerX = bounds.centerX();
-            float centerY = bounds.centerY();
-
-            //Draw the Temp
-            canvas.drawText(mHighTemp + mLowTemp, 90, 230, mTemperaturePaint);
-            Log.d(LOG_TAG, "High Temp:" + mHighTemp);
-            Log.d(LOG_TAG, "Low Temp:" + mLowTemp);
-
-            float dateYOffset = mYOffset + getResources().getDimension(R.dimen.digital_time_text_margin_bottom);
-
-            //Icon
-            if (mIcon != null && !mLowBitAmbient)
-                canvas.drawBitmap(mIcon, 175, 185, mIconPaint);
+            mFrameRate.onFrameDrawn();
+            int mode;
+            if (!isInAmbientMode()) {
+                mode = WatchFaceStats.MODE_INTERACTIVE;
+                mRenderer.draw(canvas, bounds, now);
+            } else if (mAmbientFrames.drawFrame(canvas, bounds, now)) {
+                mode = WatchFaceStats.MODE_AMBIENT_PREPARED;
+            } else {
+                mode = WatchFaceStats.MODE_AMBIENT;
+                mRenderer.draw(canvas, bounds, now);
+            }
+            mStats.onFrameDrawn(mode, System.nanoTime() - start);
         }
 
-        private void drawBackground(Canvas canvas, Rect bounds) {
-            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundColorPaint);
+        private long getBitmapBytes() {
+            return mRenderer.getBitmapBytes() + mAmbientFrames.getBitmapBytes();
         }
 
-
         /**
          * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
          * or stops it if it shouldn't be running but currently is.
@@ -488,25 +414,33 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
         /**
          * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer should
-         * only run when we're visible and in interactive mode.
+         * only run when we're visible, in interactive mode and showing something that changes
+         * more often than the system's minute tick.
          */
         private boolean shouldTimerBeRunning() {
-            return isVisible() && !isInAmbientMode();
+            return isVisible() && !isInAmbientMode() && mFrameRate.needsTimer();
         }
 
         /**
          * Handle updating the time periodically in interactive mode.
          */
         private void handleUpdateTimeMessage() {
+            mStats.onTimerWakeup();
+            long timeMs = System.currentTimeMillis();
+            mFrameRate.onTick(timeMs);
             invalidate();
             if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
+                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME,
+                        mFrameRate.getDelayToNextTickMs(timeMs));
             }
         }
 
+        private void updatePowerSaveMode() {
+            PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+            mFrameRate.setPowerSaveMode(powerManager.isPowerSaveMode());
+            updateTimer();
+        }
+
         /**
          * GoogleApiClient implementation
          */
@@ -514,6 +448,52 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         public void onConnected(Bundle bundle) {
             Log.d(LOG_TAG, "Connected to Google Play" + bundle);
             Wearable.DataApi.addListener(mGoogleApiClient, Engine.this);
+            Wearable.MessageApi.addListener(mGoogleApiClient, Engine.this);
+
+            // The phone may have sent the weather before this face was created, in which case
+            // there won't be a change event until the next sync.
+            Wearable.DataApi.getDataItems(mGoogleApiClient, WEATHER_DATA_URI)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(DataItemBuffer dataItems) {
+                            try {
+                                if (dataItems.getStatus().isSuccess()) {
+                                    applyNewestWeatherData(dataItems);
+                                }
+                            } finally {
+                                dataItems.release();
+                            }
+                            // ask the phone whether it has anything newer than that
+                            requestWeather();
+                        }
+                    });
+        }
+
+        /**
+         * Sends the version of the weather on screen to the phone, which answers with newer
+         * weather if it has any.
+         */
+        private void requestWeather() {
+            if (!mGoogleApiClient.isConnected()) {
+                return;
+            }
+            mLastWeatherRequestMs = System.currentTimeMillis();
+            final byte[] request = WeatherRequestProtocol.encodeRequest(mDataVersion);
+            Wearable.NodeApi.getConnectedNodes(mGoogleApiClient)
+                    .setResultCallback(new ResultCallback<NodeApi.GetConnectedNodesResult>() {
+                        @Override
+                        public void onResult(NodeApi.GetConnectedNodesResult result) {
+                            if (!mGoogleApiClient.isConnected()) {
+                                return;
+                            }
+                            for (Node node : result.getNodes()) {
+                                if (node.isNearby()) {
+                                    Wearable.MessageApi.sendMessage(mGoogleApiClient, node.getId(),
+                                            WearableData.PATH_WEATHER_REQUEST, request);
+                                }
+                            }
+                        }
+                    });
         }
 
         @Override
@@ -528,58 +508,200 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
         /**
          * DataApi listener
+         * <p/>
+         * A burst of syncs can deliver several weather items in one buffer; only the newest is
+         * applied, so the whole buffer costs at most one icon fetch and one redraw.
          */
         @Override
         public void onDataChanged(DataEventBuffer dataEvents) {
             Log.d(LOG_TAG, "New data received");
 
-            for (DataEvent event : dataEvents) {
-                if (event.getType() == DataEvent.TYPE_CHANGED) {
+            DataMap newest = null;
+            try {
+                mStats.onDataEvents(dataEvents.getCount());
+                for (DataEvent event : dataEvents) {
+                    DataItem item = event.getDataItem();
+                    if (event.getType() == DataEvent.TYPE_CHANGED
+                            && WearableData.PATH_WEATHER.equals(item.getUri().getPath())) {
+                        newest = newer(newest, DataMapItem.fromDataItem(item).getDataMap());
+                    }
+                }
+            } finally {
+                dataEvents.release();
+            }
 
-                    DataMap dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
-                    String path = event.getDataItem().getUri().getPath();
+            if (newest != null) {
+                applyWeatherData(newest);
+            }
+        }
 
-                    if (path.equals("/weather-data")) {
-                        mHighTemp = dataMap.getString("high-temp");
-                        mLowTemp = dataMap.getString("low-temp");
-                        new GetBitmapForWeatherTask().execute(dataMap.getAsset("icon"));
-                        invalidate();
-                    }
+        /**
+         * MessageApi listener, for the phone's answers to {@link #requestWeather()}
+         */
+        @Override
+        public void onMessageReceived(MessageEvent messageEvent) {
+            if (!WearableData.PATH_WEATHER_RESPONSE.equals(messageEvent.getPath())) {
+                return;
+            }
+            byte[] response = messageEvent.getData();
+            try {
+                if (WeatherRequestProtocol.getStatus(response) == WeatherRequestProtocol.STATUS_NOT_MODIFIED) {
+                    return;
                 }
+            } catch (IllegalArgumentException e) {
+                Log.e(LOG_TAG, "Couldn't read weather response", e);
+                return;
+            }
+
+            DataMap dataMap = DataMap.fromByteArray(WeatherRequestProtocol.getPayload(response));
+            // the custom art is in the Data Layer already
+            String iconDigest = dataMap.getString(WearableData.KEY_ICON_DIGEST);
+            if (iconDigest != null) {
+                dataMap.remove(WearableData.KEY_ICON_DIGEST);
+                dataMap.putAsset(WearableData.KEY_ICON, Asset.createFromRef(iconDigest));
             }
+            applyWeatherData(dataMap);
         }
 
-        public Bitmap loadBitmapFromAsset(Asset asset) {
-            if (asset == null)
-                return null;
+        /**
+         * Applies the most recent of {@code dataItems}, which may come from several nodes.
+         */
+        private void applyNewestWeatherData(Iterable<DataItem> dataItems) {
+            DataMap newest = null;
+            for (DataItem item : dataItems) {
+                newest = newer(newest, DataMapItem.fromDataItem(item).getDataMap());
+            }
+            if (newest != null) {
+                applyWeatherData(newest);
+            }
+        }
 
-            ConnectionResult result = mGoogleApiClient.blockingConnect(500, TimeUnit.MILLISECONDS);
-            if (!result.isSuccess())
-                return null;
+        private DataMap newer(DataMap newest, DataMap dataMap) {
+            if (newest == null
+                    || dataMap.getLong(WearableData.KEY_VERSION) > newest.getLong(WearableData.KEY_VERSION)) {
+                return dataMap;
+            }
+            return newest;
+        }
 
-            // convert asset into a file descriptor and block until it's ready
-            InputStream assetInputStream = Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset).await().getInputStream();
+        private void applyWeatherData(DataMap dataMap) {
+            long version = dataMap.getLong(WearableData.KEY_VERSION);
+            if (version < mDataVersion) {
+                return;
+            }
+            mDataVersion = version;
 
-            if (assetInputStream == null)
-                return null;
+            // the initial fetch finds the same item again after every reconnect
+            String digest = getPayloadDigest(dataMap);
+            byte[] forecastRecord = dataMap.getByteArray(WearableData.KEY_FORECAST);
+            if (digest.equals(mPayloadDigest) && Arrays.equals(forecastRecord, mForecastRecord)) {
+                return;
+            }
+            mPayloadDigest = digest;
+
+            mConditionId = dataMap.getInt(WearableData.KEY_WEATHER_ID, -1);
+            setTemperatures(dataMap.getString(WearableData.KEY_HIGH_TEMP),
+                    dataMap.getString(WearableData.KEY_LOW_TEMP));
+            mMetric = dataMap.getBoolean(WearableData.KEY_METRIC, true);
+            mForecastRecord = forecastRecord;
+            mForecast = decodeForecast(forecastRecord);
+            // the item shows the first day of its forecast, which may be over by now
+            mForecastDay = mForecast.isEmpty()
+                    ? getJulianDay(System.currentTimeMillis())
+                    : mForecast.get(0).julianDay;
+            // An asset only comes with custom art; otherwise the face has the icon itself
+            Asset icon = dataMap.getAsset(WearableData.KEY_ICON);
+            boolean loading = icon != null
+                    ? mIconLoader.load(icon)
+                    : mIconLoader.loadConditionIcon(mConditionId);
+            if (!loading) {
+                // otherwise it's saved along with the icon once that's decoded
+                saveWeather(mIcon);
+            }
+            updateForecastDay();
+            mRenderer.setForecast(mForecast, mForecastDay);
+            invalidate();
+        }
 
-            // decode the stream into a bitmap
-            return BitmapFactory.decodeStream(assetInputStream);
+        private List<ForecastDay> decodeForecast(byte[] record) {
+            if (record == null) {
+                return Collections.emptyList();
+            }
+            try {
+                return ForecastCodec.decode(record);
+            } catch (IllegalArgumentException e) {
+                Log.e(LOG_TAG, "Couldn't read forecast", e);
+                return Collections.emptyList();
+            }
         }
 
-        public class GetBitmapForWeatherTask extends AsyncTask<Asset, Void, Void> {
+        /**
+         * Shows the forecast for today if the weather on screen is for another day, which
+         * happens when the phone hasn't synced since midnight.
+         */
+        private void updateForecastDay() {
+            int today = getJulianDay(System.currentTimeMillis());
+            if (today == mForecastDay) {
+                return;
+            }
+            for (ForecastDay day : mForecast) {
+                if (day.julianDay == today) {
+                    mForecastDay = today;
+                    mConditionId = day.weatherId;
+                    String format = getString(R.string.format_temperature);
+                    setTemperatures(WeatherFormat.formatTemperature(format, day.maxTemp, mMetric),
+                            WeatherFormat.formatTemperature(format, day.minTemp, mMetric));
+                    if (!mIconLoader.loadConditionIcon(mConditionId)) {
+                        saveWeather(mIcon);
+                    }
+                    mRenderer.setForecast(mForecast, mForecastDay);
+                    return;
+                }
+            }
+        }
 
-            @Override
-            protected Void doInBackground(Asset... assets) {
-                Asset asset = assets[0];
-                mIcon = loadBitmapFromAsset(asset);
+        private int getJulianDay(long timeMs) {
+            return WeatherDates.getJulianDay(timeMs, TimeZone.getDefault());
+        }
 
-                int size = Double.valueOf(SunshineWatchFaceService.this.getResources().getDimension(R.dimen.digital_icon_size)).intValue();
-                mIcon = Bitmap.createScaledBitmap(mIcon, size, size, false);
-                postInvalidate();
+        /**
+         * Saves the weather on screen with {@code icon}. Called on the main thread or the icon
+         * loader's thread.
+         */
+        private void saveWeather(Bitmap icon) {
+            mWeatherCache.save(new WeatherCache.Entry(mHighTemp, mLowTemp, mConditionId, mMetric,
+                    mForecastDay, mForecastRecord, icon));
+        }
 
-                return null;
-            }
+        /**
+         * Identifies what a weather item shows apart from its forecast, which is compared byte
+         * for byte, and its version. An asset's digest already stands for the icon's bytes, so
+         * the icon doesn't need to be fetched to compare it.
+         */
+        private String getPayloadDigest(DataMap dataMap) {
+            Asset icon = dataMap.getAsset(WearableData.KEY_ICON);
+            return dataMap.getString(WearableData.KEY_HIGH_TEMP) + '\n'
+                    + dataMap.getString(WearableData.KEY_LOW_TEMP) + '\n'
+                    + dataMap.getInt(WearableData.KEY_WEATHER_ID, -1) + '\n'
+                    + (icon != null ? icon.getDigest() : "");
+        }
+
+        /**
+         * WeatherIconLoader listener, called on the loader's thread
+         */
+        @Override
+        public void onIconLoaded(Bitmap icon) {
+            mIcon = icon;
+            mRenderer.setIcon(icon);
+            saveWeather(icon);
+            postInvalidate();
+        }
+
+        private void setTemperatures(String highTemp, String lowTemp) {
+            mHighTemp = highTemp;
+            mLowTemp = lowTemp;
+            mRenderer.setTemperatures(highTemp, lowTemp);
+            mAmbientFrames.setTemperatures(highTemp, lowTemp);
         }
     }
 }
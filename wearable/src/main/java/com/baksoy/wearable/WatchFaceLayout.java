@@ -0,0 +1,92 @@
+package com.baksoy.wearable;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Where everything on the face goes. Positions are computed once for a given surface size,
+ * screen shape, chin inset and time text size, so drawing a frame only reads precomputed floats.
+ * <p/>
+ * The face was designed on a 320px hdpi screen; every position and the icon's size are given
+ * in that screen's pixels and scaled by the same factor to the actual surface, and the bottom
+ * row is kept clear of the chin on "flat tire" round screens.
+ */
+class WatchFaceLayout {
+
+    static final float REFERENCE_SIZE = 320f;
+
+    private static final float DATE_TOP = 60f;
+    // fit_line_height, y_offset and digital_icon_size at hdpi
+    private static final float LINE_HEIGHT = 37.5f;
+    private static final float TIME_BASELINE = 160.5f;
+    private static final float ICON_SIZE = 75f;
+    private static final float TEMPERATURE_LEFT = 90f;
+    private static final float TEMPERATURE_BASELINE = 230f;
+    private static final float ICON_LEFT = 175f;
+    private static final float ICON_TOP = 185f;
+
+    float timeX;
+    float timeBaseline;
+    float dateX;
+    float dateBaseline;
+    float temperatureX;
+    float temperatureBaseline;
+    // where the icon is drawn, scaled to fit
+    final RectF iconBounds = new RectF();
+
+    // The inputs the current positions were computed for
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private boolean mIsRound;
+    private int mChinHeight = -1;
+    private float mTimeTextSize = -1;
+    private float mTimeWidth = -1;
+
+    /**
+     * Recomputes the positions if any of the inputs differ from the last call.
+     *
+     * @param timeWidth the width of "00:00" in the current time font
+     * @return whether the positions changed
+     */
+    boolean update(Rect bounds, boolean isRound, int chinHeight, float timeTextSize, float timeWidth) {
+        int width = bounds.width();
+        int height = bounds.height();
+        if (width == mWidth && height == mHeight && isRound == mIsRound
+                && chinHeight == mChinHeight && timeTextSize == mTimeTextSize
+                && timeWidth == mTimeWidth) {
+            return false;
+        }
+        mWidth = width;
+        mHeight = height;
+        mIsRound = isRound;
+        mChinHeight = chinHeight;
+        mTimeTextSize = timeTextSize;
+        mTimeWidth = timeWidth;
+
+        float scale = Math.min(width, height) / REFERENCE_SIZE;
+        float centerX = width / 2f;
+
+        // the date is drawn centered
+        dateX = centerX;
+        dateBaseline = (DATE_TOP + LINE_HEIGHT) * scale;
+
+        timeX = centerX - timeWidth / 2f;
+        timeBaseline = TIME_BASELINE * scale;
+
+        temperatureX = TEMPERATURE_LEFT * scale;
+        temperatureBaseline = TEMPERATURE_BASELINE * scale;
+        float iconLeft = ICON_LEFT * scale;
+        float iconTop = ICON_TOP * scale;
+        float iconSize = ICON_SIZE * scale;
+
+        // lift the bottom row above the chin if it would be cut off; only round screens have one
+        float bottom = isRound ? height - chinHeight : height;
+        float overflow = Math.max(temperatureBaseline, iconTop + iconSize) - bottom;
+        if (overflow > 0) {
+            temperatureBaseline -= overflow;
+            iconTop -= overflow;
+        }
+        iconBounds.set(iconLeft, iconTop, iconLeft + iconSize, iconTop + iconSize);
+        return true;
+    }
+}
@@ -0,0 +1,392 @@
+package com.baksoy.wearable;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.text.format.DateFormat;
+
+import com.example.android.sunshine.core.ForecastDay;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Draws the Sunshine watch face.
+ * <p/>
+ * Everything {@link #draw} touches is allocated up front, so rendering a frame creates no
+ * garbage: the date and temperature strings are only rebuilt when the day or the weather data
+ * changes.
+ * <p/>
+ * The face is composed of two layers. The static layer (background, date, temperatures,
+ * weather icon and forecast sparkline) is rendered once into an offscreen bitmap and only
+ * redrawn when one of its inputs changes; every frame then costs a single bitmap blit plus the
+ * time digits, which are themselves blitted from a {@link DigitGlyphAtlas} built once per paint
+ * configuration.
+ */
+class WatchFaceRenderer {
+
+    // The time is drawn as hours and minutes only
+    static final boolean DRAWS_SECONDS = false;
+
+    private static final int TEXT_DATE_COLOR = Color.GRAY;
+    private static final int TEXT_COLON_COLOR = Color.GRAY;
+    private static final int TEXT_HOURS_MINS_COLOR = Color.WHITE;
+
+    // Paint configurations the time digits can be drawn with, each with its own glyph atlas
+    private static final int TIME_CONFIG_INTERACTIVE = 0;
+    private static final int TIME_CONFIG_AMBIENT = 1;
+    private static final int TIME_CONFIG_LOW_BIT_AMBIENT = 2;
+
+    private final Typeface BOLD_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
+    private final Typeface NORMAL_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private final Context mContext;
+
+    private final int mBackgroundColor;
+    private final int mBackgroundColorAmbient;
+    private final int mTemperatureColor;
+
+    private final Paint mBackgroundColorPaint;
+    private final Paint mDatePaint;
+    private final Paint mDigitPaint;
+    private final Paint mColonPaint;
+    private final Paint mTemperaturePaint;
+    private final Paint mIconPaint;
+
+    private final Calendar mCalendar;
+    private final Date mDate;
+    private java.text.DateFormat mDateFormat;
+
+    private final DigitGlyphAtlas[] mGlyphAtlases = new DigitGlyphAtlas[3];
+    private DigitGlyphAtlas mGlyphAtlas;
+
+    private String mDateText = "";
+    private int mDateYear = -1;
+    private int mDateDayOfYear = -1;
+
+    private String mTemperatureText = "";
+
+    private volatile Bitmap mIcon;
+
+    private final ForecastSparkline mSparkline;
+
+    private Bitmap mStaticLayer;
+    private Canvas mStaticLayerCanvas;
+    // What the offscreen bitmaps hold, read by the stats from any thread
+    private volatile long mBitmapBytes;
+    // set from the icon loading thread, read on the draw thread
+    private volatile boolean mStaticLayerDirty = true;
+
+    private final WatchFaceLayout mLayout;
+    private boolean mIsRound;
+    private int mChinHeight;
+    private float mTimeTextSize;
+    private float mTimeWidth;
+
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+
+    WatchFaceRenderer(Context context) {
+        mContext = context;
+
+        mBackgroundColor = ContextCompat.getColor(context, R.color.background_color);
+        mBackgroundColorAmbient = ContextCompat.getColor(context, R.color.background_color_ambient);
+        mTemperatureColor = ContextCompat.getColor(context, R.color.temperature_color);
+
+        mBackgroundColorPaint = new Paint();
+        mBackgroundColorPaint.setColor(mBackgroundColor);
+
+        mDatePaint = createTextPaint(TEXT_DATE_COLOR, NORMAL_TYPEFACE);
+        mDatePaint.setTextAlign(Paint.Align.CENTER);
+        mDigitPaint = createTextPaint(TEXT_HOURS_MINS_COLOR, BOLD_TYPEFACE);
+        mColonPaint = createTextPaint(TEXT_COLON_COLOR, NORMAL_TYPEFACE);
+        mTemperaturePaint = createTextPaint(mTemperatureColor, NORMAL_TYPEFACE);
+        mIconPaint = new Paint();
+        // the icon is scaled to the layout's size when the static layer is drawn
+        mIconPaint.setFilterBitmap(true);
+        mSparkline = new ForecastSparkline(mTemperatureColor, TEXT_DATE_COLOR);
+
+        mLayout = new WatchFaceLayout();
+
+        mCalendar = Calendar.getInstance();
+        mDate = new Date();
+        initFormats();
+
+        updateGlyphAtlas();
+    }
+
+    private void initFormats() {
+        mDateFormat = DateFormat.getDateFormat(mContext);
+        mDateFormat.setCalendar(mCalendar);
+    }
+
+    private Paint createTextPaint(int color, Typeface typeface) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Resizes the text for a round or square screen.
+     *
+     * @param chinHeight height of the cut-off strip at the bottom of "flat tire" round screens
+     */
+    void applyWindowInsets(boolean isRound, int chinHeight) {
+        Resources resources = mContext.getResources();
+
+        mIsRound = isRound;
+        mChinHeight = chinHeight;
+        mTimeTextSize = resources.getDimension(isRound
+                ? R.dimen.fit_text_size_round : R.dimen.fit_text_size);
+
+        mDigitPaint.setTextSize(mTimeTextSize);
+        mColonPaint.setTextSize(mTimeTextSize);
+        mDatePaint.setTextSize(resources.getDimension(R.dimen.fit_date_text_size));
+        mTemperaturePaint.setTextSize(resources.getDimension(R.dimen.fit_temperature_text_size));
+
+        discardGlyphAtlases();
+        updateGlyphAtlas();
+        mStaticLayerDirty = true;
+    }
+
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        mLowBitAmbient = lowBitAmbient;
+        updateAntiAlias();
+
+        discardGlyphAtlases();
+        updateGlyphAtlas();
+        mStaticLayerDirty = true;
+    }
+
+    void setAmbientMode(boolean inAmbientMode) {
+        mAmbient = inAmbientMode;
+        if (inAmbientMode) {
+            mBackgroundColorPaint.setColor(mBackgroundColorAmbient);
+            mDatePaint.setColor(mBackgroundColorAmbient);
+            mTemperaturePaint.setColor(mBackgroundColorAmbient);
+            mIconPaint.setAlpha(0);
+        } else {
+            mBackgroundColorPaint.setColor(mBackgroundColor);
+            mDatePaint.setColor(TEXT_DATE_COLOR);
+            mTemperaturePaint.setColor(mTemperatureColor);
+            mIconPaint.setAlpha(255);
+        }
+        updateAntiAlias();
+
+        updateGlyphAtlas();
+        mStaticLayerDirty = true;
+    }
+
+    /**
+     * Low-bit ambient displays can't show anti-aliased text, so it's switched off while in
+     * ambient mode on those devices.
+     */
+    private void updateAntiAlias() {
+        boolean antiAlias = !(mAmbient && mLowBitAmbient);
+        mDatePaint.setAntiAlias(antiAlias);
+        mTemperaturePaint.setAntiAlias(antiAlias);
+    }
+
+    private int getTimeConfig() {
+        if (!mAmbient) {
+            return TIME_CONFIG_INTERACTIVE;
+        }
+        return mLowBitAmbient ? TIME_CONFIG_LOW_BIT_AMBIENT : TIME_CONFIG_AMBIENT;
+    }
+
+    /**
+     * Switches to the glyph atlas for the current mode, building it if it doesn't exist yet.
+     */
+    private void updateGlyphAtlas() {
+        int config = getTimeConfig();
+        if (mGlyphAtlases[config] == null) {
+            boolean antiAlias = config != TIME_CONFIG_LOW_BIT_AMBIENT;
+            mDigitPaint.setTypeface(config == TIME_CONFIG_INTERACTIVE ? BOLD_TYPEFACE : NORMAL_TYPEFACE);
+            mDigitPaint.setAntiAlias(antiAlias);
+            mColonPaint.setAntiAlias(antiAlias);
+            mGlyphAtlases[config] = new DigitGlyphAtlas(mDigitPaint, mColonPaint);
+        }
+        mGlyphAtlas = mGlyphAtlases[config];
+        mTimeWidth = 4 * mGlyphAtlas.getAdvance(0) + mGlyphAtlas.getAdvance(DigitGlyphAtlas.COLON);
+        updateBitmapBytes();
+    }
+
+    private void discardGlyphAtlases() {
+        for (int i = 0; i < mGlyphAtlases.length; i++) {
+            if (mGlyphAtlases[i] != null) {
+                mGlyphAtlases[i].recycle();
+                mGlyphAtlases[i] = null;
+            }
+        }
+        mGlyphAtlas = null;
+        updateBitmapBytes();
+    }
+
+    private void updateBitmapBytes() {
+        long bytes = mStaticLayer != null ? mStaticLayer.getAllocationByteCount() : 0;
+        for (DigitGlyphAtlas atlas : mGlyphAtlases) {
+            if (atlas != null) {
+                bytes += atlas.getByteCount();
+            }
+        }
+        mBitmapBytes = bytes;
+    }
+
+    /**
+     * @return the bytes held by the offscreen bitmaps; safe to call from any thread
+     */
+    long getBitmapBytes() {
+        return mBitmapBytes;
+    }
+
+    /**
+     * Picks up a new default time zone and forces the date to be reformatted.
+     */
+    void onTimeZoneChanged() {
+        mCalendar.setTimeZone(TimeZone.getDefault());
+        initFormats();
+        mDateDayOfYear = -1;
+    }
+
+    void setTemperatures(String highTemp, String lowTemp) {
+        mTemperatureText = highTemp + lowTemp;
+        mStaticLayerDirty = true;
+    }
+
+    /**
+     * Shows the days of {@code forecast} from {@code firstDay} on in the sparkline.
+     */
+    void setForecast(List<ForecastDay> forecast, int firstDay) {
+        if (mSparkline.setForecast(forecast, firstDay)) {
+            mStaticLayerDirty = true;
+        }
+    }
+
+    void setIcon(Bitmap icon) {
+        mIcon = icon;
+        mStaticLayerDirty = true;
+    }
+
+    void draw(Canvas canvas, Rect bounds, long now) {
+        mCalendar.setTimeInMillis(now);
+        if (updateDateText(now)) {
+            mStaticLayerDirty = true;
+        }
+        if (mLayout.update(bounds, mIsRound, mChinHeight, mTimeTextSize, mTimeWidth)) {
+            mStaticLayerDirty = true;
+        }
+        WatchFaceLayout layout = mLayout;
+
+        if (mStaticLayerDirty || !isStaticLayerSized(bounds)) {
+            renderStaticLayer(bounds);
+        }
+        canvas.drawBitmap(mStaticLayer, 0, 0, null);
+
+        DigitGlyphAtlas atlas = mGlyphAtlas;
+        float x = layout.timeX;
+        float baseline = layout.timeBaseline;
+
+        // Draw the Hour
+        int hour = mCalendar.get(Calendar.HOUR_OF_DAY);
+        x += atlas.drawGlyph(canvas, hour / 10, x, baseline);
+        x += atlas.drawGlyph(canvas, hour % 10, x, baseline);
+
+        // Draw the colon between hour and minute
+        x += atlas.drawGlyph(canvas, DigitGlyphAtlas.COLON, x, baseline);
+
+        // Draw the Minute
+        int minute = mCalendar.get(Calendar.MINUTE);
+        x += atlas.drawGlyph(canvas, minute / 10, x, baseline);
+        atlas.drawGlyph(canvas, minute % 10, x, baseline);
+    }
+
+    /**
+     * Frees the offscreen bitmaps. The renderer can't draw again until its insets, ambient mode
+     * or low-bit setting are applied again.
+     */
+    void release() {
+        discardGlyphAtlases();
+        if (mStaticLayer != null) {
+            mStaticLayer.recycle();
+            mStaticLayer = null;
+            mStaticLayerCanvas = null;
+        }
+        updateBitmapBytes();
+    }
+
+    private boolean isStaticLayerSized(Rect bounds) {
+        return mStaticLayer != null
+                && mStaticLayer.getWidth() == bounds.width()
+                && mStaticLayer.getHeight() == bounds.height();
+    }
+
+    /**
+     * Redraws everything that doesn't change from one tick to the next into the offscreen
+     * static layer, (re)creating the layer bitmap only when the surface size changes.
+     */
+    private void renderStaticLayer(Rect bounds) {
+        // clear the flag first so an icon published while we draw marks the layer dirty again
+        mStaticLayerDirty = false;
+
+        if (!isStaticLayerSized(bounds)) {
+            if (mStaticLayer != null) {
+                mStaticLayer.recycle();
+            }
+            mStaticLayer = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+            // the background is opaque, which lets the blit skip blending
+            mStaticLayer.setHasAlpha(false);
+            mStaticLayerCanvas = new Canvas(mStaticLayer);
+            updateBitmapBytes();
+        }
+        Canvas canvas = mStaticLayerCanvas;
+
+        canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundColorPaint);
+
+        WatchFaceLayout layout = mLayout;
+
+        // Draw the Date
+        canvas.drawText(mDateText, layout.dateX, layout.dateBaseline, mDatePaint);
+
+        // Draw the Temp
+        canvas.drawText(mTemperatureText, layout.temperatureX, layout.temperatureBaseline, mTemperaturePaint);
+
+        // Icon
+        Bitmap icon = mIcon;
+        if (icon != null && !mAmbient) {
+            canvas.drawBitmap(icon, null, layout.iconBounds, mIconPaint);
+        }
+
+        // Forecast, which like the icon is left out in ambient mode
+        if (!mAmbient) {
+            mSparkline.draw(canvas, bounds, mIsRound, mChinHeight);
+        }
+    }
+
+    /**
+     * Reformats the date only when the calendar has moved on to another day.
+     *
+     * @return whether the date text changed
+     */
+    private boolean updateDateText(long now) {
+        int year = mCalendar.get(Calendar.YEAR);
+        int dayOfYear = mCalendar.get(Calendar.DAY_OF_YEAR);
+        if (year == mDateYear && dayOfYear == mDateDayOfYear) {
+            return false;
+        }
+        mDate.setTime(now);
+        mDateText = mDateFormat.format(mDate);
+        mDateYear = year;
+        mDateDayOfYear = dayOfYear;
+        return true;
+    }
+}
@@ -0,0 +1,175 @@
+package com.baksoy.wearable;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the work the face does, so builds can be compared on a real watch by how much they
+ * draw, wake up and load per hour.
+ * <p/>
+ * Every counter is an atomic, and draw times go into a fixed histogram of power-of-two
+ * microsecond buckets, so recording is lock-free and allocation-free from any thread. The
+ * p99 read from the histogram is the upper bound of its bucket, which is within a factor of
+ * two of the real value and plenty to spot a regression.
+ */
+class WatchFaceStats {
+
+    static final int MODE_INTERACTIVE = 0;
+    static final int MODE_AMBIENT = 1;
+    // An ambient frame that was prepared ahead and only blitted
+    static final int MODE_AMBIENT_PREPARED = 2;
+    private static final String[] MODE_NAMES = {"interactive", "ambient", "ambient prepared"};
+
+    // Bucket i holds draws of less than 2^i microseconds; the last one holds everything longer
+    private static final int BUCKETS = 20;
+
+    private static final long LOG_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+    private static final double HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final long mStartMs = System.currentTimeMillis();
+
+    private final AtomicLongArray mFrames = new AtomicLongArray(MODE_NAMES.length);
+    private final AtomicLong mDrawNanos = new AtomicLong();
+    private final AtomicLongArray mDrawHistogram = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mWakeups = new AtomicLong();
+    private final AtomicLong mDataEvents = new AtomicLong();
+    private final AtomicLong mAssetFetches = new AtomicLong();
+    private final AtomicLong mDecodes = new AtomicLong();
+    private final AtomicLong mDecodeNanos = new AtomicLong();
+    private final AtomicLong mIconBytes = new AtomicLong();
+
+    private final AtomicLong mLastLogMs = new AtomicLong(mStartMs);
+
+    void onFrameDrawn(int mode, long nanos) {
+        mFrames.incrementAndGet(mode);
+        mDrawNanos.addAndGet(nanos);
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        mDrawHistogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+    }
+
+    /**
+     * Counts a wakeup of the face's own timer, on top of the system's minute ticks.
+     */
+    void onTimerWakeup() {
+        mWakeups.incrementAndGet();
+    }
+
+    void onDataEvents(int count) {
+        mDataEvents.addAndGet(count);
+    }
+
+    void onAssetFetched() {
+        mAssetFetches.incrementAndGet();
+    }
+
+    void onIconDecoded(long nanos) {
+        mDecodes.incrementAndGet();
+        mDecodeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Sets the bytes held by decoded icons.
+     */
+    void setIconBytes(long bytes) {
+        mIconBytes.set(bytes);
+    }
+
+    /**
+     * @return whether an hour has passed since the last log line; only one caller gets true
+     */
+    boolean shouldLog(long nowMs) {
+        long last = mLastLogMs.get();
+        return nowMs - last >= LOG_INTERVAL_MS && mLastLogMs.compareAndSet(last, nowMs);
+    }
+
+    /**
+     * The counters since the service started, on one line.
+     */
+    String toLogLine() {
+        return String.format(Locale.US,
+                "frames=%d/%d/%d drawMs=%d p99Us=%d wakeups=%d events=%d fetches=%d decodes=%d iconKb=%d up=%dmin",
+                mFrames.get(MODE_INTERACTIVE), mFrames.get(MODE_AMBIENT),
+                mFrames.get(MODE_AMBIENT_PREPARED),
+                TimeUnit.NANOSECONDS.toMillis(mDrawNanos.get()), getDrawP99Micros(),
+                mWakeups.get(), mDataEvents.get(), mAssetFetches.get(), mDecodes.get(),
+                mIconBytes.get() / 1024,
+                TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - mStartMs));
+    }
+
+    /**
+     * Writes the counters, with rates per hour, in the style of dumpsys.
+     *
+     * @param bitmapBytes the bytes held by the face's own bitmaps, besides the icons
+     */
+    void dump(String prefix, PrintWriter out, long bitmapBytes) {
+        long nowMs = System.currentTimeMillis();
+        double hours = Math.max(nowMs - mStartMs, 1) / HOUR_MS;
+
+        out.print(prefix);
+        out.println(String.format(Locale.US, "Stats over %.2fh:", hours));
+        String indent = prefix + "  ";
+        long frames = 0;
+        for (int mode = 0; mode < MODE_NAMES.length; mode++) {
+            long count = mFrames.get(mode);
+            frames += count;
+            printCount(out, indent, MODE_NAMES[mode] + " frames", count, hours);
+        }
+        long drawNanos = mDrawNanos.get();
+        out.println(String.format(Locale.US, "%sdraw time: %dms total, %dus mean, p99 < %dus",
+                indent, TimeUnit.NANOSECONDS.toMillis(drawNanos),
+                frames > 0 ? drawNanos / frames / 1000 : 0, getDrawP99Micros()));
+        printCount(out, indent, "timer wakeups", mWakeups.get(), hours);
+        printCount(out, indent, "data events", mDataEvents.get(), hours);
+        printCount(out, indent, "asset fetches", mAssetFetches.get(), hours);
+        long decodes = mDecodes.get();
+        printCount(out, indent, "icon decodes", decodes, hours);
+        out.println(String.format(Locale.US, "%sdecode time: %dms total, %dus mean",
+                indent, TimeUnit.NANOSECONDS.toMillis(mDecodeNanos.get()),
+                decodes > 0 ? mDecodeNanos.get() / decodes / 1000 : 0));
+        out.println(String.format(Locale.US, "%sbitmap bytes: %d icons, %d face",
+                indent, mIconBytes.get(), bitmapBytes));
+
+        out.print(indent);
+        out.print("draw histogram (us):");
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = mDrawHistogram.get(i);
+            if (count > 0) {
+                out.print(' ');
+                out.print(i < BUCKETS - 1 ? "<" + (1L << i) : ">=" + (1L << (BUCKETS - 2)));
+                out.print('=');
+                out.print(count);
+            }
+        }
+        out.println();
+    }
+
+    private static void printCount(PrintWriter out, String indent, String name, long count, double hours) {
+        out.println(String.format(Locale.US, "%s%s: %d (%.1f/h)", indent, name, count, count / hours));
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the 99th percentile draw
+     */
+    private long getDrawP99Micros() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += mDrawHistogram.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = total - total / 100;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mDrawHistogram.get(i);
+            if (seen >= threshold) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+}
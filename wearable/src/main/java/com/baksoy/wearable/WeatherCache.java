@@ -0,0 +1,188 @@
+package com.baksoy.wearable;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * The last weather the watch received, kept in a small binary file so a freshly created face
+ * can show it from its very first frame instead of waiting for the phone.
+ * <p/>
+ * The record holds the temperature strings, the condition id, the forecast the phone sent with
+ * the day it's showing, so the face can still move on to the next day, and the icon's raw ARGB
+ * pixels, already scaled to the size the face draws it at. Loading maps the file and copies the pixels
+ * straight into a bitmap, which is fast enough to do synchronously in {@code onCreate}; saving
+ * copies the record on the caller's thread, then writes it on a background thread and replaces
+ * the file atomically.
+ */
+class WeatherCache {
+
+    private static final String LOG_TAG = WeatherCache.class.getSimpleName();
+
+    private static final String FILE_NAME = "last_weather.bin";
+    private static final int MAGIC = 0x53554e57; // "SUNW"
+    private static final int VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static class Entry {
+        final String highTemp;
+        final String lowTemp;
+        final int conditionId;
+        final boolean metric;
+        // the Julian day the temperatures and condition are for
+        final int forecastDay;
+        // a ForecastCodec record, or null
+        final byte[] forecast;
+        final Bitmap icon;
+
+        Entry(String highTemp, String lowTemp, int conditionId, boolean metric, int forecastDay,
+              byte[] forecast, Bitmap icon) {
+            this.highTemp = highTemp;
+            this.lowTemp = lowTemp;
+            this.conditionId = conditionId;
+            this.metric = metric;
+            this.forecastDay = forecastDay;
+            this.forecast = forecast;
+            this.icon = icon;
+        }
+    }
+
+    private final File mFile;
+    private final File mTempFile;
+
+    WeatherCache(Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+        mTempFile = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+    }
+
+    /**
+     * Reads the cached weather.
+     *
+     * @return the cached entry, or null if there is none or it can't be read
+     */
+    Entry load() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mFile, "r");
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            int conditionId = buffer.getInt();
+            boolean metric = buffer.getInt() != 0;
+            int forecastDay = buffer.getInt();
+            String highTemp = readString(buffer);
+            String lowTemp = readString(buffer);
+            byte[] forecast = new byte[buffer.getInt()];
+            buffer.get(forecast);
+
+            Bitmap icon = null;
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            if (width > 0 && height > 0) {
+                icon = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                icon.copyPixelsFromBuffer(buffer);
+            }
+            return new Entry(highTemp, lowTemp, conditionId, metric, forecastDay,
+                    forecast.length > 0 ? forecast : null, icon);
+        } catch (IOException | RuntimeException e) {
+            // a truncated or corrupt file is just a cache miss
+            Log.w(LOG_TAG, "Couldn't read cached weather", e);
+            return null;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing cache file", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the weather on a background thread. The icon's pixels are copied before this
+     * returns, since the icon loader may decode another icon into the same bitmap later.
+     */
+    void save(Entry entry) {
+        final ByteBuffer record = encode(entry);
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(record);
+            }
+        });
+    }
+
+    private static ByteBuffer encode(Entry entry) {
+        byte[] high = entry.highTemp != null ? entry.highTemp.getBytes(UTF_8) : new byte[0];
+        byte[] low = entry.lowTemp != null ? entry.lowTemp.getBytes(UTF_8) : new byte[0];
+        byte[] forecast = entry.forecast != null ? entry.forecast : new byte[0];
+        Bitmap icon = entry.icon;
+        boolean hasIcon = icon != null && !icon.isRecycled() && icon.getConfig() == Bitmap.Config.ARGB_8888;
+        int pixelBytes = hasIcon ? icon.getByteCount() : 0;
+
+        ByteBuffer buffer = ByteBuffer.allocate(10 * 4 + high.length + low.length + forecast.length
+                + pixelBytes);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(entry.conditionId);
+        buffer.putInt(entry.metric ? 1 : 0);
+        buffer.putInt(entry.forecastDay);
+        buffer.putInt(high.length).put(high);
+        buffer.putInt(low.length).put(low);
+        buffer.putInt(forecast.length).put(forecast);
+        buffer.putInt(hasIcon ? icon.getWidth() : 0);
+        buffer.putInt(hasIcon ? icon.getHeight() : 0);
+        if (hasIcon) {
+            icon.copyPixelsToBuffer(buffer);
+        }
+        return buffer;
+    }
+
+    private void write(ByteBuffer buffer) {
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(mTempFile);
+            out.write(buffer.array(), 0, buffer.position());
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!mTempFile.renameTo(mFile)) {
+                Log.e(LOG_TAG, "Couldn't replace " + mFile);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing cached weather", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing cache file", e);
+                }
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
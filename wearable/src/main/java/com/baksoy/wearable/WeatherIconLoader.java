@@ -0,0 +1,337 @@
+package com.baksoy.wearable;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads weather icons on a dedicated background thread, either from the icons bundled with the
+ * face for each weather condition or from an asset the phone sent.
+ * <p/>
+ * Icons are decoded straight to {@code digital_icon_size}, about the size the face draws them at,
+ * using {@code inSampleSize} for the coarse reduction and {@code inDensity}/{@code inTargetDensity}
+ * for the exact scale. Decoded icons are kept by key, the bundled icon or the asset's digest, so a
+ * condition that comes back is shown again without another asset fetch or decode; an icon evicted
+ * from that cache is reused through {@code inBitmap} for the next decode. Only the latest request
+ * matters: an icon that is superseded by a newer one before it has been fetched or decoded is
+ * dropped.
+ * <p/>
+ * One loader is shared by every engine of the service. Requests are keyed by the bundled icon
+ * or the asset's digest, so engines that start together and all ask for the icon they find in
+ * the Data Layer cause a single load, and each listener is handed the icon once it's decoded.
+ */
+class WeatherIconLoader {
+
+    private static final String LOG_TAG = WeatherIconLoader.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_MS = 500;
+
+    private static final int NO_REQUEST = 0;
+
+    // Enough for every bundled icon at a few KB each
+    private static final int CACHED_ICONS = 8;
+
+    interface Listener {
+        /**
+         * Called on the loader's thread with a freshly decoded icon.
+         */
+        void onIconLoaded(Bitmap icon);
+    }
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final WatchFaceStats mStats;
+    private final Resources mResources;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final int mIconSize;
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    // Key of the icon being loaded or last loaded, guarded by this
+    private String mRequestedKey;
+
+    // Only used on the loader's thread
+    private final LruCache<String, Bitmap> mIcons = new LruCache<String, Bitmap>(CACHED_ICONS) {
+        @Override
+        protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+            // Every engine is handed each icon, so an engine holds the last one, or the one
+            // before while its draw thread catches up; either may also be getting saved
+            if (evicted && oldValue != mLastIcon && oldValue != mPreviousIcon) {
+                mReusable = oldValue;
+            }
+        }
+    };
+    private Bitmap mReusable;
+    private final ByteArrayOutputStream mBuffer = new ByteArrayOutputStream();
+    private final byte[] mReadChunk = new byte[8192];
+    private final BitmapFactory.Options mOptions = new BitmapFactory.Options();
+    private Bitmap mLastIcon;
+    private Bitmap mPreviousIcon;
+
+    WeatherIconLoader(Context context, GoogleApiClient googleApiClient, WatchFaceStats stats) {
+        mGoogleApiClient = googleApiClient;
+        mStats = stats;
+        mResources = context.getResources();
+        mIconSize = mResources.getDimensionPixelSize(R.dimen.digital_icon_size);
+
+        mThread = new HandlerThread("WeatherIconLoader", Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * Adds a listener, which is handed the last loaded icon right away if there is one.
+     */
+    void addListener(final Listener listener) {
+        mListeners.add(listener);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mLastIcon != null && mListeners.contains(listener)) {
+                    listener.onIconLoaded(mLastIcon);
+                }
+            }
+        });
+    }
+
+    void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Loads the bundled icon for an OpenWeatherMap condition id, cancelling any load that
+     * hasn't finished yet. Does nothing if that icon is already being loaded or was the last one
+     * loaded, or if there is no icon for the condition.
+     *
+     * @return true if a load was started
+     */
+    boolean loadConditionIcon(int conditionId) {
+        final int iconId = WeatherIcons.getIconResourceForWeatherCondition(conditionId);
+        if (iconId == -1) {
+            return false;
+        }
+        final String key = "res:" + iconId;
+        final int generation = startRequest(key);
+        if (generation == NO_REQUEST) {
+            return false;
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap icon = mIcons.get(key);
+                if (icon == null && !isSuperseded(generation)
+                        && read(mResources.openRawResource(iconId))) {
+                    icon = decode(mBuffer.toByteArray());
+                }
+                deliver(icon, key, generation);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Loads {@code asset}, cancelling any load that hasn't finished yet. Does nothing if the
+     * same asset is already being loaded or was the last one loaded.
+     *
+     * @return true if a load was started
+     */
+    boolean load(final Asset asset) {
+        final String key = "asset:" + asset.getDigest();
+        final int generation = startRequest(key);
+        if (generation == NO_REQUEST) {
+            return false;
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap icon = mIcons.get(key);
+                if (icon == null) {
+                    icon = fetchAndDecode(asset, generation);
+                }
+                deliver(icon, key, generation);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return the new request's generation, or NO_REQUEST if {@code key} is already requested
+     */
+    private synchronized int startRequest(String key) {
+        if (key.equals(mRequestedKey)) {
+            return NO_REQUEST;
+        }
+        mRequestedKey = key;
+        return mGeneration.incrementAndGet();
+    }
+
+    private void deliver(Bitmap icon, String key, int generation) {
+        if (icon == null) {
+            onLoadFailed(key);
+        } else {
+            mIcons.put(key, icon);
+            mStats.setIconBytes(getIconBytes());
+            if (isSuperseded(generation)) {
+                return;
+            }
+            if (icon != mLastIcon) {
+                mPreviousIcon = mLastIcon;
+                mLastIcon = icon;
+            }
+            for (Listener listener : mListeners) {
+                listener.onIconLoaded(icon);
+            }
+        }
+    }
+
+    private long getIconBytes() {
+        long bytes = 0;
+        for (Bitmap icon : mIcons.snapshot().values()) {
+            bytes += icon.getAllocationByteCount();
+        }
+        Bitmap reusable = mReusable;
+        if (reusable != null && !reusable.isRecycled()) {
+            bytes += reusable.getAllocationByteCount();
+        }
+        return bytes;
+    }
+
+    /**
+     * Forgets a failed request so the next one for the same icon tries again.
+     */
+    private synchronized void onLoadFailed(String key) {
+        if (key.equals(mRequestedKey)) {
+            mRequestedKey = null;
+        }
+    }
+
+    private boolean isSuperseded(int generation) {
+        return generation != mGeneration.get();
+    }
+
+    private Bitmap fetchAndDecode(Asset asset, int generation) {
+        if (asset == null || isSuperseded(generation)) {
+            return null;
+        }
+
+        if (!mGoogleApiClient.isConnected()) {
+            ConnectionResult result = mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (!result.isSuccess()) {
+                return null;
+            }
+        }
+
+        // convert asset into a file descriptor and block until it's ready
+        DataApi.GetFdForAssetResult fdResult =
+                Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset).await();
+        InputStream assetInputStream = fdResult.getInputStream();
+        if (assetInputStream == null || isSuperseded(generation)) {
+            fdResult.release();
+            return null;
+        }
+        mStats.onAssetFetched();
+
+        boolean read = read(assetInputStream);
+        fdResult.release();
+
+        if (!read || isSuperseded(generation)) {
+            return null;
+        }
+        return decode(mBuffer.toByteArray());
+    }
+
+    /**
+     * Reads all of {@code in} into mBuffer and closes it.
+     */
+    private boolean read(InputStream in) {
+        try {
+            mBuffer.reset();
+            int read;
+            while ((read = in.read(mReadChunk)) != -1) {
+                mBuffer.write(mReadChunk, 0, read);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading icon", e);
+            return false;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing icon stream", e);
+            }
+        }
+    }
+
+    /**
+     * Decodes {@code data} to an mIconSize square bitmap, reusing an evicted icon when it can.
+     */
+    private Bitmap decode(byte[] data) {
+        BitmapFactory.Options options = mOptions;
+        options.inJustDecodeBounds = true;
+        options.inSampleSize = 1;
+        options.inScaled = false;
+        options.inBitmap = null;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        // Halve while the result stays at least as big as the target, then scale exactly.
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= mIconSize && height / (sampleSize * 2) >= mIconSize) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inScaled = true;
+        options.inDensity = width / sampleSize;
+        options.inTargetDensity = mIconSize;
+        options.inMutable = true;
+
+        Bitmap reusable = mReusable;
+        mReusable = null;
+        options.inBitmap = reusable != null && !reusable.isRecycled() ? reusable : null;
+
+        long start = System.nanoTime();
+        Bitmap icon;
+        try {
+            icon = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // the evicted icon couldn't be reused for this image
+            options.inBitmap = null;
+            icon = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        mStats.onIconDecoded(System.nanoTime() - start);
+        return icon;
+    }
+
+    void release() {
+        mListeners.clear();
+        mGeneration.incrementAndGet();
+        mThread.quitSafely();
+    }
+}
@@ -0,0 +1,43 @@
+package com.baksoy.wearable;
+
+import com.example.android.sunshine.core.WeatherCondition;
+
+/**
+ * Maps OpenWeatherMap condition ids to the icons bundled with the face, the same way the
+ * phone app picks its own icons.
+ */
+class WeatherIcons {
+
+    private WeatherIcons() {
+    }
+
+    /**
+     * @param weatherId from the OpenWeatherMap API response
+     * @return resource id of the icon for the condition, or -1 if there is none
+     */
+    static int getIconResourceForWeatherCondition(int weatherId) {
+        WeatherCondition condition = WeatherCondition.fromWeatherId(weatherId);
+        if (condition == null) {
+            return -1;
+        }
+        switch (condition) {
+            case STORM:
+                return R.drawable.ic_storm;
+            case LIGHT_RAIN:
+                return R.drawable.ic_light_rain;
+            case RAIN:
+                return R.drawable.ic_rain;
+            case SNOW:
+                return R.drawable.ic_snow;
+            case FOG:
+                return R.drawable.ic_fog;
+            case CLEAR:
+                return R.drawable.ic_clear;
+            case LIGHT_CLOUDS:
+                return R.drawable.ic_light_clouds;
+            case CLOUDS:
+                return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+}
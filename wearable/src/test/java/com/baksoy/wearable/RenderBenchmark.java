@@ -0,0 +1,79 @@
+package com.baksoy.wearable;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+import static com.example.android.sunshine.core.TestUtilities.getAllocatedBytes;
+
+/**
+ * Drives a {@link WatchFaceRenderer} through a sequence of frames against an offscreen canvas
+ * and measures the cost per frame.
+ * <p/>
+ * Runs on the JVM under Robolectric with {@link ShadowNullCanvas}, so the numbers cover the
+ * face's own per-frame work (time keeping, layout, glyph selection, allocations) and not
+ * Skia's rasterization, which has to be measured on a watch.
+ */
+class RenderBenchmark {
+
+    static final int SIZE = 320;
+
+    private static final int WARM_UP_FRAMES = 1000;
+
+    static class Result {
+        final String name;
+        final int frames;
+        final long nanosPerFrame;
+        final long bytesPerFrame;
+
+        Result(String name, int frames, long nanosPerFrame, long bytesPerFrame) {
+            this.name = name;
+            this.frames = frames;
+            this.nanosPerFrame = nanosPerFrame;
+            this.bytesPerFrame = bytesPerFrame;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-20s %7d frames %9d ns/frame %6d bytes/frame",
+                    name, frames, nanosPerFrame, bytesPerFrame);
+        }
+    }
+
+    private final Canvas mCanvas;
+    private final Rect mBounds = new Rect(0, 0, SIZE, SIZE);
+
+    RenderBenchmark() {
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+    }
+
+    /**
+     * Draws {@code frames} frames {@code frameIntervalMs} apart, starting at 8am today so a
+     * sequence of a few hours never crosses midnight.
+     */
+    Result run(String name, WatchFaceRenderer renderer, int frames, long frameIntervalMs) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 8);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long start = calendar.getTimeInMillis();
+
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            renderer.draw(mCanvas, mBounds, start + (i % frames) * frameIntervalMs);
+        }
+
+        long bytesBefore = getAllocatedBytes();
+        long nanosBefore = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            renderer.draw(mCanvas, mBounds, start + i * frameIntervalMs);
+        }
+        long nanos = System.nanoTime() - nanosBefore;
+        long bytes = getAllocatedBytes() - bytesBefore;
+
+        return new Result(name, frames, nanos / frames, bytes / frames);
+    }
+}
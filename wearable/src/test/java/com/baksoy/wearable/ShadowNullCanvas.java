@@ -0,0 +1,53 @@
+package com.baksoy.wearable;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+ * A canvas that throws every draw call away.
+ * <p/>
+ * Robolectric's own canvas shadow records a text description of each call, which would dominate
+ * both the time and the allocations the render benchmark measures. With this one in place the
+ * benchmark sees only the face's own per-frame work.
+ */
+@Implements(Canvas.class)
+public class ShadowNullCanvas {
+
+    @Implementation
+    public void __constructor__() {
+    }
+
+    @Implementation
+    public void __constructor__(Bitmap bitmap) {
+    }
+
+    @Implementation
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+    }
+
+    @Implementation
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+    }
+
+    @Implementation
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+    }
+
+    @Implementation
+    public void drawPath(Path path, Paint paint) {
+    }
+
+    @Implementation
+    public void drawText(String text, float x, float y, Paint paint) {
+    }
+
+    @Implementation
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+    }
+}
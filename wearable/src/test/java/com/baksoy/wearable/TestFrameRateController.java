@@ -0,0 +1,94 @@
+package com.baksoy.wearable;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestFrameRateController {
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    // 10:00 on some day, on the hour
+    private static final long TEN_AM = 1450000000000L / HOUR_MS * HOUR_MS + 10 * HOUR_MS;
+
+    @Test
+    public void noSecondsNeedsNoTimer() {
+        FrameRateController controller = new FrameRateController(false);
+        assertFalse(controller.needsTimer());
+        assertEquals(FrameRateController.MINUTE_TICK_MS, controller.getTickPeriodMs());
+    }
+
+    @Test
+    public void secondsTickOnlyWhileNotMutedOrSaving() {
+        FrameRateController controller = new FrameRateController(true);
+        assertTrue(controller.needsTimer());
+        assertEquals(FrameRateController.SECOND_TICK_MS, controller.getTickPeriodMs());
+
+        controller.setMuted(true);
+        assertFalse(controller.needsTimer());
+        controller.setMuted(false);
+        controller.setPowerSaveMode(true);
+        assertFalse(controller.needsTimer());
+        controller.setPowerSaveMode(false);
+        assertTrue(controller.needsTimer());
+    }
+
+    @Test
+    public void alignsTicksToBoundaries() {
+        FrameRateController controller = new FrameRateController(true);
+        assertEquals(1000, controller.getDelayToNextTickMs(TEN_AM));
+        assertEquals(250, controller.getDelayToNextTickMs(TEN_AM + 750));
+
+        controller = new FrameRateController(false);
+        assertEquals(TimeUnit.SECONDS.toMillis(59), controller.getDelayToNextTickMs(TEN_AM + 1000));
+    }
+
+    @Test
+    public void rollsOverOnTicksOnly() {
+        FrameRateController controller = new FrameRateController(true);
+        controller.onTick(TEN_AM);
+        for (int i = 0; i < 5; i++) {
+            controller.onFrameDrawn();
+        }
+        controller.onTick(TEN_AM + 1000);
+        controller.onFrameDrawn();
+        assertEquals(6, controller.getFramesThisHour());
+        assertEquals(2, controller.getTicksThisHour());
+
+        // a frame after the hour, before its first tick, is counted to the hour before
+        controller.onFrameDrawn();
+        controller.onTimeTick(TEN_AM + HOUR_MS);
+        assertEquals(7, controller.getFramesLastHour());
+        assertEquals(2, controller.getTicksLastHour());
+        assertEquals(0, controller.getFramesThisHour());
+        assertEquals(0, controller.getTicksThisHour());
+
+        // an hour with no tick at all counts as empty
+        controller.onTick(TEN_AM + 3 * HOUR_MS);
+        assertEquals(0, controller.getFramesLastHour());
+        assertEquals(0, controller.getTicksLastHour());
+        assertEquals(1, controller.getTicksThisHour());
+    }
+
+    @Test
+    public void dumpsCounts() {
+        FrameRateController controller = new FrameRateController(false);
+        controller.onTimeTick(TEN_AM);
+        controller.onFrameDrawn();
+        controller.onTimeTick(TEN_AM + HOUR_MS);
+        controller.onFrameDrawn();
+        controller.onFrameDrawn();
+
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        controller.dump("  ", writer);
+        writer.flush();
+        assertEquals("  tick period 60000ms: 2 frames, 0 timer ticks this hour; 1 frames, "
+                + "0 timer ticks last hour\n", out.toString());
+    }
+}
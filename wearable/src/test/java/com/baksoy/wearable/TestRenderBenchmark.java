@@ -0,0 +1,93 @@
+package com.baksoy.wearable;
+
+import android.graphics.Bitmap;
+
+import com.example.android.sunshine.core.ForecastDay;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.sunshine.core.TestUtilities.writeReport;
+import static org.junit.Assert.assertEquals;
+
+/*
+    Headless render benchmark for the watch face. Runs each mode's frame sequence on the JVM,
+    writes ns/frame and allocations/frame to build/reports/benchmarks/TestRenderBenchmark, and
+    fails if a mode starts allocating per frame, so it doubles as a regression gate for rendering
+    changes: ./gradlew :wearable:testDebugUnitTest
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, shadows = {ShadowNullCanvas.class})
+public class TestRenderBenchmark {
+
+    private static final int INTERACTIVE_FRAMES = 10000;
+    private static final int AMBIENT_FRAMES = 600;
+
+    private static final long SECOND_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int FIRST_DAY = 2457400;
+
+    private RenderBenchmark mBenchmark;
+
+    @Before
+    public void setUp() {
+        mBenchmark = new RenderBenchmark();
+    }
+
+    private WatchFaceRenderer createRenderer() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(RuntimeEnvironment.application);
+        renderer.applyWindowInsets(true, 0);
+        renderer.setTemperatures("25°", "16°");
+        renderer.setIcon(Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888));
+        return renderer;
+    }
+
+    private static void report(RenderBenchmark.Result result) throws IOException {
+        writeReport(TestRenderBenchmark.class, result.name, result.toString());
+        assertEquals(result.name + " allocates while drawing", 0, result.bytesPerFrame);
+    }
+
+    @Test
+    public void interactive() throws IOException {
+        WatchFaceRenderer renderer = createRenderer();
+        renderer.setAmbientMode(false);
+        report(mBenchmark.run("interactive", renderer, INTERACTIVE_FRAMES, SECOND_MS));
+    }
+
+    @Test
+    public void interactiveWithSparkline() throws IOException {
+        WatchFaceRenderer renderer = createRenderer();
+        List<ForecastDay> forecast = new ArrayList<>();
+        for (int i = 0; i < 14; i++) {
+            forecast.add(new ForecastDay(FIRST_DAY + i, 800, 10 + i % 4, 20 + i % 5, 50, 3, 180));
+        }
+        renderer.setForecast(forecast, FIRST_DAY);
+        renderer.setAmbientMode(false);
+        report(mBenchmark.run("sparkline", renderer, INTERACTIVE_FRAMES, SECOND_MS));
+    }
+
+    @Test
+    public void ambient() throws IOException {
+        WatchFaceRenderer renderer = createRenderer();
+        renderer.setAmbientMode(true);
+        report(mBenchmark.run("ambient", renderer, AMBIENT_FRAMES, MINUTE_MS));
+    }
+
+    @Test
+    public void lowBitAmbient() throws IOException {
+        WatchFaceRenderer renderer = createRenderer();
+        renderer.setLowBitAmbient(true);
+        renderer.setAmbientMode(true);
+        report(mBenchmark.run("low-bit ambient", renderer, AMBIENT_FRAMES, MINUTE_MS));
+    }
+}
@@ -0,0 +1,93 @@
+package com.baksoy.wearable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestWatchFaceStats {
+
+    private WatchFaceStats mStats;
+
+    @Before
+    public void setUp() {
+        mStats = new WatchFaceStats();
+    }
+
+    private void draw(int count, long micros) {
+        for (int i = 0; i < count; i++) {
+            mStats.onFrameDrawn(WatchFaceStats.MODE_INTERACTIVE, TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+    }
+
+    private String dump() {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        mStats.dump("", writer, 0);
+        writer.flush();
+        return out.toString();
+    }
+
+    private String histogram() {
+        String dump = dump();
+        int start = dump.indexOf("draw histogram (us):");
+        assertTrue(dump, start >= 0);
+        return dump.substring(start, dump.indexOf('\n', start)).trim();
+    }
+
+    @Test
+    public void bucketsDrawsByPowerOfTwo() {
+        draw(1, 0);
+        draw(2, 1);
+        draw(3, 3);
+        draw(4, 4);
+        draw(5, 1023);
+        draw(6, 1024);
+        assertEquals("draw histogram (us): <1=1 <2=2 <4=3 <8=4 <1024=5 <2048=6", histogram());
+    }
+
+    @Test
+    public void putsLongDrawsInTheLastBucket() {
+        draw(1, 1 << 18);
+        draw(1, TimeUnit.SECONDS.toMicros(10));
+        assertEquals("draw histogram (us): >=262144=2", histogram());
+    }
+
+    @Test
+    public void readsP99AsTheBucketBound() {
+        assertTrue(mStats.toLogLine().contains(" p99Us=0 "));
+
+        draw(99, 3);
+        draw(1, 1000);
+        assertTrue(mStats.toLogLine().contains(" p99Us=4 "));
+
+        draw(1, 1000);
+        assertTrue(mStats.toLogLine().contains(" p99Us=1024 "));
+    }
+
+    @Test
+    public void dumpsCounters() {
+        mStats.onFrameDrawn(WatchFaceStats.MODE_AMBIENT, TimeUnit.MICROSECONDS.toNanos(300));
+        mStats.onFrameDrawn(WatchFaceStats.MODE_AMBIENT_PREPARED, TimeUnit.MICROSECONDS.toNanos(100));
+        mStats.onTimerWakeup();
+        mStats.onDataEvents(3);
+        mStats.onIconDecoded(TimeUnit.MILLISECONDS.toNanos(2));
+        mStats.setIconBytes(4096);
+
+        String dump = dump();
+        assertTrue(dump, dump.contains("  interactive frames: 0 "));
+        assertTrue(dump, dump.contains("  ambient frames: 1 "));
+        assertTrue(dump, dump.contains("  ambient prepared frames: 1 "));
+        assertTrue(dump, dump.contains("  draw time: 0ms total, 200us mean, p99 < 512us\n"));
+        assertTrue(dump, dump.contains("  timer wakeups: 1 "));
+        assertTrue(dump, dump.contains("  data events: 3 "));
+        assertTrue(dump, dump.contains("  icon decodes: 1 "));
+        assertTrue(dump, dump.contains("  decode time: 2ms total, 2000us mean\n"));
+        assertTrue(dump, dump.contains("  bitmap bytes: 4096 icons, 0 face\n"));
+    }
+}